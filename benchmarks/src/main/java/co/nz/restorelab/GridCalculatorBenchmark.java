@@ -0,0 +1,36 @@
+package co.nz.restorelab;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregation of smc points onto the 5km NZTM grid.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GridCalculatorBenchmark {
+
+    @Param({"10000", "100000"})
+    int pointCount;
+
+    GridCalculator gridCalculator;
+    SimpleFeatureCollection features;
+
+    @Setup
+    public void setup() throws Exception {
+        gridCalculator = new GridCalculator(5000);
+        features = SyntheticData.smcFeatures(pointCount, 50, 1);
+    }
+
+    @Benchmark
+    public List<GridCell> aggregate() {
+        return gridCalculator.aggregate(features);
+    }
+}
@@ -0,0 +1,46 @@
+package co.nz.restorelab;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-cell statistics: merging the values of two cells and averaging them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GridCellBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    int valueCount;
+
+    GridCell cell;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        cell = new GridCell(0, 0, null, random.nextDouble() * 100);
+        for (int i = 1; i < valueCount; i++) {
+            cell.addAllValues(Collections.singletonList(random.nextDouble() * 100));
+        }
+    }
+
+    @Benchmark
+    public double average() {
+        return cell.average();
+    }
+
+    @Benchmark
+    public List<Double> merge() {
+        GridCell merged = new GridCell(0, 0, null, 0);
+        merged.addAllValues(cell.getValues());
+        return merged.getValues();
+    }
+}
@@ -0,0 +1,62 @@
+package co.nz.restorelab;
+
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bathtub fill over a procedural DEM: clustering the seeds, filling each window and mosaicking.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InundationBathtubBenchmark {
+
+    // At least 2000 so that 4 groups fit on the DEM as separate windows
+    @Param({"2000", "4000"})
+    int demSize;
+
+    @Param({"100", "10000"})
+    int seedCount;
+
+    // Number of separate groups the seeds are generated in, each filled as its own window
+    @Param({"1", "4"})
+    int clusters;
+
+    double clusterDistance;
+    GridCoverage2D dem;
+    CoordinateReferenceSystem demCRS;
+    SeedBuffer seeds;
+
+    @Setup
+    public void setup() throws Exception {
+        dem = SyntheticData.dem(demSize, demSize, 1);
+        demCRS = dem.getCoordinateReferenceSystem2D();
+        seeds = SyntheticData.floodSeeds(dem, seedCount, clusters, 2);
+        clusterDistance = SyntheticData.floodClusterDistance(dem, clusters);
+
+        int windows = seeds.cluster(clusterDistance, InundationBathtub.AOI_BUFFER).size();
+        if (windows != clusters) {
+            throw new IllegalStateException("Expected " + clusters + " bathtub windows but the seeds make " + windows);
+        }
+    }
+
+    @Benchmark
+    public GridCoverage2D fill() {
+        ProgressTracker progress = new ProgressTracker(null, 0, 100, 0);
+        ExecutionRecorder recorder = new ExecutionRecorder(null);
+        List<InundationBathtub.FloodWindow> windows = new ArrayList<>();
+        for (SeedBuffer cluster : seeds.cluster(clusterDistance, InundationBathtub.AOI_BUFFER)) {
+            InundationBathtub.FloodWindow window = InundationBathtub.fill(dem, demCRS, cluster, progress, recorder);
+            if (window != null) windows.add(window);
+        }
+        return InundationBathtub.mosaic(dem, windows, progress, recorder);
+    }
+}
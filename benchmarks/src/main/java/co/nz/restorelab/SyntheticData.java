@@ -0,0 +1,181 @@
+package co.nz.restorelab;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geotools.api.data.SimpleFeatureSource;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.filter.Filter;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.referencing.operation.transform.IdentityTransform;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reproducible synthetic inputs for the benchmarks. Every generator takes a seed so that runs
+ * being compared see exactly the same data.
+ */
+public final class SyntheticData {
+    // New Zealand extent in EPSG:3857, the CRS of smc_measurements
+    private static final double NZ_MIN_X = 18_480_000;
+    private static final double NZ_MAX_X = 19_925_000;
+    private static final double NZ_MIN_Y = -5_950_000;
+    private static final double NZ_MAX_Y = -4_030_000;
+
+    // Generated DEMs start here in EPSG:4326 with roughly 30m pixels, like NZ_DEM_4326_30m
+    private static final double DEM_ORIGIN_LON = 172.0;
+    private static final double DEM_ORIGIN_LAT = -41.0;
+    private static final double DEM_RESOLUTION = 0.0003;
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Soil moisture points scattered uniformly over New Zealand with the smc_measurements schema.
+     *
+     * @param count   number of points, the benchmarks use 10^4 to 10^7
+     * @param smcMean mean soil moisture value, individual values vary by up to 10 either side
+     */
+    public static SimpleFeatureCollection smcFeatures(int count, double smcMean, long seed) {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("smc_measurements");
+        tb.add("geometry", Point.class);
+        tb.add("utc_time", Date.class);
+        tb.add("smc_mat", Double.class);
+        SimpleFeatureType featureType = tb.buildFeatureType();
+
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType);
+        Random random = new Random(seed);
+        Date time = new Date(0);
+
+        List<SimpleFeature> features = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Point p = gf.createPoint(new Coordinate(
+                    NZ_MIN_X + random.nextDouble() * (NZ_MAX_X - NZ_MIN_X),
+                    NZ_MIN_Y + random.nextDouble() * (NZ_MAX_Y - NZ_MIN_Y)
+            ));
+            featureBuilder.set("geometry", p);
+            featureBuilder.set("utc_time", time);
+            featureBuilder.set("smc_mat", smcMean + (random.nextDouble() * 20 - 10));
+            features.add(featureBuilder.buildFeature("fid" + i));
+        }
+        return new ListFeatureCollection(featureType, features);
+    }
+
+    /**
+     * Catalog serving restore-lab:smc_measurements, answering alternate queries with the two ranges.
+     */
+    public static Catalog smcCatalog(SimpleFeatureCollection range1, SimpleFeatureCollection range2) throws IOException {
+        Catalog catalog = mock(Catalog.class);
+        LayerInfo layer = mock(LayerInfo.class);
+        FeatureTypeInfo featureType = mock(FeatureTypeInfo.class);
+        SimpleFeatureSource featureSource = mock(SimpleFeatureSource.class);
+
+        AtomicInteger queries = new AtomicInteger();
+        when(catalog.getLayerByName("restore-lab:smc_measurements")).thenReturn(layer);
+        when(layer.getResource()).thenReturn(featureType);
+        when((SimpleFeatureSource) featureType.getFeatureSource(null, null)).thenReturn(featureSource);
+        when(featureSource.getFeatures((Filter) any())).thenAnswer(
+                invocation -> queries.getAndIncrement() % 2 == 0 ? range1 : range2);
+        return catalog;
+    }
+
+    /**
+     * Procedural DEM of rolling hills and basins, with a sea level band along the southern edge.
+     */
+    public static GridCoverage2D dem(int width, int height, long seed) {
+        Random random = new Random(seed);
+        double phaseX = random.nextDouble() * Math.PI * 2;
+        double phaseY = random.nextDouble() * Math.PI * 2;
+
+        float[][] elevation = new float[height][width];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                double value = 0;
+                double amplitude = 200;
+                double frequency = 4.0 / width;
+                for (int octave = 0; octave < 4; octave++) {
+                    value += amplitude * Math.sin(col * frequency * Math.PI + phaseX)
+                            * Math.cos(row * frequency * Math.PI + phaseY);
+                    amplitude /= 2;
+                    frequency *= 2;
+                }
+                // Rises away from the coast so floods drain towards it
+                value += 300.0 * (height - row) / height;
+                elevation[row][col] = (float) Math.max(0, value + random.nextGaussian());
+            }
+        }
+
+        ReferencedEnvelope envelope = new ReferencedEnvelope(
+                DEM_ORIGIN_LON, DEM_ORIGIN_LON + width * DEM_RESOLUTION,
+                DEM_ORIGIN_LAT - height * DEM_RESOLUTION, DEM_ORIGIN_LAT,
+                DefaultGeographicCRS.WGS84
+        );
+        return new GridCoverageFactory().create("dem", elevation, envelope);
+    }
+
+    /**
+     * Flood observations in {@code clusters} separate groups, one in the middle of each cell of a
+     * square grid over the DEM. Every group lies within {@link #floodSpread} of its centre, so with
+     * {@link #floodClusterDistance} each group becomes one bathtub window on a large enough DEM.
+     */
+    static SeedBuffer floodSeeds(GridCoverage2D dem, int count, int clusters, long seed) {
+        ReferencedEnvelope env = ReferencedEnvelope.reference(dem.getEnvelope2D());
+        Random random = new Random(seed);
+        int side = (int) Math.ceil(Math.sqrt(clusters));
+        double spread = floodSpread(dem, clusters);
+
+        SeedBuffer seeds = new SeedBuffer(IdentityTransform.create(2));
+        for (int i = 0; i < count; i++) {
+            int cluster = i % clusters;
+            double centreX = env.getMinX() + (cluster % side + 0.5) * env.getWidth() / side;
+            double centreY = env.getMinY() + (cluster / side + 0.5) * env.getHeight() / side;
+            seeds.add(centreX + clampedGaussian(random) * spread, centreY + clampedGaussian(random) * spread);
+        }
+        seeds.flush();
+        return seeds;
+    }
+
+    /**
+     * Largest distance of a generated flood observation from its group centre, a tenth of a grid cell.
+     * Groups stay separate windows while a cell is wider than the group plus the cropping buffer on
+     * both sides, for 4 groups a DEM of at least 2000 pixels.
+     */
+    static double floodSpread(GridCoverage2D dem, int clusters) {
+        ReferencedEnvelope env = ReferencedEnvelope.reference(dem.getEnvelope2D());
+        int side = (int) Math.ceil(Math.sqrt(clusters));
+        return Math.min(env.getWidth(), env.getHeight()) / side / 10;
+    }
+
+    /**
+     * Cluster distance that keeps every generated group in one window and the groups apart.
+     */
+    static double floodClusterDistance(GridCoverage2D dem, int clusters) {
+        return 2 * floodSpread(dem, clusters);
+    }
+
+    private static double clampedGaussian(Random random) {
+        return Math.max(-1, Math.min(1, random.nextGaussian() / 3));
+    }
+}
@@ -0,0 +1,53 @@
+package co.nz.restorelab;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * temporalGridChange: the join between two pre-aggregated grids on its own, and the full
+ * execution with both aggregations for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TemporalGridChangeBenchmark {
+
+    @Param({"10000", "100000"})
+    int pointCount;
+
+    TemporalGridChange process;
+    List<GridCell> grid1;
+    List<GridCell> grid2;
+    SimpleFeatureType resultType;
+
+    @Setup
+    public void setup() throws Exception {
+        SimpleFeatureCollection range1 = SyntheticData.smcFeatures(pointCount, 50, 1);
+        SimpleFeatureCollection range2 = SyntheticData.smcFeatures(pointCount, 60, 2);
+        process = new TemporalGridChange(SyntheticData.smcCatalog(range1, range2));
+
+        GridCalculator gridCalculator = new GridCalculator(5000);
+        grid1 = gridCalculator.aggregate(range1);
+        grid2 = gridCalculator.aggregate(range2);
+        resultType = gridCalculator.getResultFeatureType("EPSG:3857");
+    }
+
+    @Benchmark
+    public List<SimpleFeature> join() {
+        return TemporalGridChange.join(grid1, grid2, resultType, new ProgressTracker(null, 0, 100, grid1.size()));
+    }
+
+    @Benchmark
+    public SimpleFeatureCollection execute() {
+        return process.execute("2025-01-01T00:00:00", "2025-01-05T00:00:00",
+                "2025-02-01T00:00:00", "2025-02-05T00:00:00", "EPSG:3857", null);
+    }
+}
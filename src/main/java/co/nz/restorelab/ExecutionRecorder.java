@@ -0,0 +1,131 @@
+package co.nz.restorelab;
+
+import org.geotools.util.logging.Logging;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records stage timings and counters for a single process execution. Stages may be recorded
+ * from several threads and repeated stages are summed. Closing the recorder merges it into the
+ * process wide {@link ProcessMetrics} and logs a one line key=value summary of the request.
+ * <p>
+ * Allocation is estimated from the executing thread only, so work done on other threads
+ * (such as parallel bathtub windows) is not included.
+ */
+class ExecutionRecorder implements AutoCloseable {
+    private static final Logger LOGGER = Logging.getLogger(ExecutionRecorder.class);
+
+    private final ProcessMetrics metrics;
+    private final long startNanos;
+    private final long startAllocated;
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+    private boolean completed;
+    private boolean closed;
+
+    /**
+     * @param metrics meters to merge into on close, or null to only record this execution
+     */
+    ExecutionRecorder(ProcessMetrics metrics) {
+        this.metrics = metrics;
+        this.startNanos = System.nanoTime();
+        this.startAllocated = allocatedBytes();
+    }
+
+    /**
+     * Starts timing a stage, which is recorded when the returned handle is closed.
+     */
+    Stage stage(String name) {
+        return new Stage(name);
+    }
+
+    synchronized void record(String stage, long nanos) {
+        Long previous = stageNanos.get(stage);
+        stageNanos.put(stage, previous == null ? nanos : previous + nanos);
+    }
+
+    synchronized void count(String counter, long amount) {
+        Long previous = counts.get(counter);
+        counts.put(counter, previous == null ? amount : previous + amount);
+    }
+
+    /**
+     * Marks the execution as successful, executions closed without this are counted as failures.
+     */
+    synchronized void complete() {
+        completed = true;
+    }
+
+    synchronized Map<String, Long> getStageNanos() {
+        return new LinkedHashMap<>(stageNanos);
+    }
+
+    synchronized Map<String, Long> getCounts() {
+        return new LinkedHashMap<>(counts);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        stageNanos.put(ProcessMetrics.TOTAL, System.nanoTime() - startNanos);
+        long allocated = allocatedBytes();
+        if (allocated >= 0 && startAllocated >= 0) {
+            counts.put("allocated_bytes", allocated - startAllocated);
+        }
+        if (metrics == null) return;
+
+        metrics.record(stageNanos, counts, completed);
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(summary());
+        }
+    }
+
+    private String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("process=").append(metrics.getProcess());
+        sb.append(" status=").append(completed ? "completed" : "failed");
+        for (Map.Entry<String, Long> stage : stageNanos.entrySet()) {
+            sb.append(' ').append(stage.getKey()).append("_ms=")
+                    .append(String.format(Locale.ROOT, "%.1f", stage.getValue() / 1e6));
+        }
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            sb.append(' ').append(count.getKey()).append('=').append(count.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Handle for a running stage, for use in try-with-resources.
+     */
+    class Stage implements AutoCloseable {
+        private final String name;
+        private final long start = System.nanoTime();
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            record(name, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package co.nz.restorelab;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.SourcelessOpImage;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * One bit flood mask over the union of several bathtub windows. Tiles are computed on demand
+ * from the window masks, so only the windows themselves are held in memory however far apart
+ * they are, and tiles away from every window are cheap to produce.
+ */
+class FloodMaskImage extends SourcelessOpImage {
+    static final int TILE_SIZE = 512;
+
+    private final List<InundationBathtub.FloodWindow> windows;
+    private final int minCol;
+    private final int minRow;
+
+    /**
+     * @param minCol DEM grid column of the first image column
+     * @param minRow DEM grid row of the first image row
+     */
+    FloodMaskImage(List<InundationBathtub.FloodWindow> windows, int minCol, int minRow, int width, int height) {
+        super(layout(width, height), null, tileSampleModel(), 0, 0, width, height);
+        this.windows = windows;
+        this.minCol = minCol;
+        this.minRow = minRow;
+    }
+
+    private static SampleModel tileSampleModel() {
+        return new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE, TILE_SIZE, TILE_SIZE, 1);
+    }
+
+    private static ImageLayout layout(int width, int height) {
+        byte[] gray = {0, (byte) 255};
+        return new ImageLayout(0, 0, width, height, 0, 0, TILE_SIZE, TILE_SIZE,
+                tileSampleModel(), new IndexColorModel(1, 2, gray, gray, gray));
+    }
+
+    @Override
+    protected void computeRect(PlanarImage[] sources, WritableRaster dest, Rectangle destRect) {
+        for (InundationBathtub.FloodWindow window : windows) {
+            Rectangle bounds = new Rectangle(window.originX - minCol, window.originY - minRow, window.width, window.height);
+            Rectangle overlap = bounds.intersection(destRect);
+            if (overlap.isEmpty()) continue;
+
+            BitSet mask = window.mask;
+            for (int y = overlap.y; y < overlap.y + overlap.height; y++) {
+                int rowStart = (y - bounds.y) * window.width + (overlap.x - bounds.x);
+                int rowEnd = rowStart + overlap.width;
+                for (int i = mask.nextSetBit(rowStart); i >= 0 && i < rowEnd; i = mask.nextSetBit(i + 1)) {
+                    dest.setSample(overlap.x + (i - rowStart), y, 0, 1);
+                }
+            }
+        }
+    }
+}
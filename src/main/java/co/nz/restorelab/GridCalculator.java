@@ -11,12 +11,17 @@ import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.process.ProcessException;
 import org.geotools.referencing.CRS;
 import org.locationtech.jts.geom.*;
 
 import java.util.*;
 
 public class GridCalculator {
+    // Grid origin at the south-western extent of NZ in NZTM
+    private static final double ORIGIN_X = 800000;
+    private static final double ORIGIN_Y = 4700000;
+
     private final double cellSize;
     private final GeometryFactory geometryFactory;
     private final MathTransform transform;
@@ -33,47 +38,162 @@ public class GridCalculator {
     }
 
     public List<GridCell> aggregate(SimpleFeatureCollection features) {
-        double minX = 800000;   // western extent of NZ in NZTM
-        double minY = 4700000;  // southern extent of NZ in NZTM
+        return aggregate(features, new ProgressTracker(null, 0, 100, 0), new ExecutionRecorder(null));
+    }
 
+    /**
+     * Aggregates the features, recording the time spent querying, reading, reprojecting and
+     * aggregating them.
+     */
+    List<GridCell> aggregate(SimpleFeatureCollection features, ProgressTracker progress, ExecutionRecorder recorder) {
         List<GridCell> counts = new ArrayList<>();
+        forEachCell(features, new CellVisitor() {
+            private Double smcValue;
+
+            @Override
+            public boolean accept(SimpleFeature feature) {
+                smcValue = (Double) feature.getAttribute("smc_mat");
+                return true;
+            }
+
+            @Override
+            public void visit(int col, int row, Polygon cellPolygon) {
+                GridCell cell = new GridCell(col, row, cellPolygon, smcValue);
+                if (counts.contains(cell)) {
+                    cell.addAllValues(counts.get(counts.indexOf(cell)).getValues());
+                    counts.remove(cell);
+                }
+                counts.add(cell);
+            }
+        }, progress, recorder);
+        recorder.count("grid_cells", counts.size());
+        return counts;
+    }
+
+    /**
+     * Aggregates the features into every time window their utc_time falls in, reading the features
+     * once.
+     */
+    List<GridCellSeries> aggregateSeries(SimpleFeatureCollection features, TimeWindows windows,
+                                         ProgressTracker progress, ExecutionRecorder recorder) {
+        Map<Long, GridCellSeries> cells = new LinkedHashMap<>();
+        int[] matches = new int[windows.size()];
+        long[] bucketed = new long[1];
+
+        forEachCell(features, new CellVisitor() {
+            private int windowCount;
+            private double smcValue;
+
+            @Override
+            public boolean accept(SimpleFeature feature) {
+                Object time = feature.getAttribute("utc_time");
+                Object value = feature.getAttribute("smc_mat");
+                if (!(time instanceof Date) || !(value instanceof Number)) return false;
+
+                windowCount = windows.find(((Date) time).getTime(), matches);
+                bucketed[0] += windowCount;
+                smcValue = ((Number) value).doubleValue();
+                return windowCount > 0;
+            }
+
+            @Override
+            public void visit(int col, int row, Polygon cellPolygon) {
+                Long key = cellKey(col, row);
+                GridCellSeries cell = cells.get(key);
+                if (cell == null) {
+                    cell = new GridCellSeries(col, row, cellPolygon, windows.size());
+                    cells.put(key, cell);
+                }
+                for (int i = 0; i < windowCount; i++) {
+                    cell.add(matches[i], smcValue);
+                }
+            }
+        }, progress, recorder);
+        recorder.count("window_assignments", bucketed[0]);
+        recorder.count("grid_cells", cells.size());
+        return new ArrayList<>(cells.values());
+    }
+
+    /**
+     * Receives the grid cells intersected by each feature read by {@link #forEachCell}.
+     */
+    private interface CellVisitor {
+        /**
+         * Called for every feature with a geometry, returns false to skip the feature.
+         */
+        boolean accept(SimpleFeature feature);
+
+        /**
+         * Called for every cell the last accepted feature intersects.
+         */
+        void visit(int col, int row, Polygon cellPolygon);
+    }
+
+    /**
+     * Reads the features once, passing every grid cell each feature intersects to the visitor, and
+     * records the time spent querying, reading, reprojecting and visiting them.
+     */
+    private void forEachCell(SimpleFeatureCollection features, CellVisitor visitor,
+                             ProgressTracker progress, ExecutionRecorder recorder) {
+        Map<Long, Polygon> polygons = new HashMap<>();
 
+        long processed = 0;
+        long start = System.nanoTime();
+        long queryNanos = 0, readNanos = 0, reprojectNanos = 0;
         try (SimpleFeatureIterator featureIterator = features.features()) {
+            // Collections are lazy, so the query runs when the iterator is opened
+            long mark = System.nanoTime();
+            queryNanos = mark - start;
             while (featureIterator.hasNext()) {
+                progress.step(processed++);
                 SimpleFeature feature = featureIterator.next();
+                long now = System.nanoTime();
+                readNanos += now - mark;
+                mark = now;
                 Geometry geom = (Geometry) feature.getDefaultGeometry();
-                if (geom == null) continue;
+                if (geom == null || !visitor.accept(feature)) continue;
 
                 // Transform from 3857 to NZTM
                 Geometry transformedGeom = JTS.transform(geom, transform);
+                now = System.nanoTime();
+                reprojectNanos += now - mark;
                 Envelope geomEnv = transformedGeom.getEnvelopeInternal();
 
-                int colStart = (int) Math.floor((geomEnv.getMinX() - minX) / cellSize);
-                int colEnd = (int) Math.floor((geomEnv.getMaxX() - minX) / cellSize);
-                int rowStart = (int) Math.floor((geomEnv.getMinY() - minY) / cellSize);
-                int rowEnd = (int) Math.floor((geomEnv.getMaxY() - minY) / cellSize);
+                int colStart = (int) Math.floor((geomEnv.getMinX() - ORIGIN_X) / cellSize);
+                int colEnd = (int) Math.floor((geomEnv.getMaxX() - ORIGIN_X) / cellSize);
+                int rowStart = (int) Math.floor((geomEnv.getMinY() - ORIGIN_Y) / cellSize);
+                int rowEnd = (int) Math.floor((geomEnv.getMaxY() - ORIGIN_Y) / cellSize);
 
                 for (int col = colStart; col <= colEnd; col++) {
                     for (int row = rowStart; row <= rowEnd; row++) {
-                        double cellMinX = minX + col * cellSize;
-                        double cellMinY = minY + row * cellSize;
-                        Polygon cellPolygon = createCell(cellMinX, cellMinY, cellSize);
-
+                        Long key = cellKey(col, row);
+                        Polygon cellPolygon = polygons.get(key);
+                        if (cellPolygon == null) {
+                            cellPolygon = createCell(ORIGIN_X + col * cellSize, ORIGIN_Y + row * cellSize, cellSize);
+                            polygons.put(key, cellPolygon);
+                        }
                         if (geom.intersects(cellPolygon)) {
-                            GridCell cell = new GridCell(col, row, cellPolygon, (Double) feature.getAttribute("smc_mat"));
-                            if (counts.contains(cell)) {
-                                cell.addAllValues(counts.get(counts.indexOf(cell)).getValues());
-                                counts.remove(cell);
-                            }
-                            counts.add(cell);
+                            visitor.visit(col, row, cellPolygon);
                         }
                     }
                 }
+                mark = System.nanoTime();
             }
+        } catch (ProcessException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("Error processing features", e);
         }
-        return counts;
+        recorder.record("query", queryNanos);
+        recorder.record("read", readNanos);
+        recorder.record("reproject", reprojectNanos);
+        recorder.record("aggregate", System.nanoTime() - start - queryNanos - readNanos - reprojectNanos);
+        recorder.count("features", processed);
+        progress.done();
+    }
+
+    private static long cellKey(int col, int row) {
+        return ((long) col << 32) ^ (row & 0xffffffffL);
     }
 
     public SimpleFeatureType getResultFeatureType(String outputCrs) throws FactoryException {
@@ -85,6 +205,24 @@ public class GridCalculator {
         return featureTypeBuilder.buildFeatureType();
     }
 
+    /**
+     * Feature type for a series result, holding the mean of each window and the change from the
+     * previous window.
+     */
+    public SimpleFeatureType getSeriesFeatureType(String outputCrs, int windows) throws FactoryException {
+        SimpleFeatureTypeBuilder featureTypeBuilder = new SimpleFeatureTypeBuilder();
+        featureTypeBuilder.setName("gridcellseries");
+        featureTypeBuilder.setCRS(CRS.decode(outputCrs));
+        featureTypeBuilder.add("geometry", Polygon.class);
+        for (int i = 0; i < windows; i++) {
+            featureTypeBuilder.add("mean_" + i, Double.class);
+        }
+        for (int i = 1; i < windows; i++) {
+            featureTypeBuilder.add("change_" + i, Double.class);
+        }
+        return featureTypeBuilder.buildFeatureType();
+    }
+
     private Polygon createCell(double minX, double minY, double size) {
         Coordinate[] coords = new Coordinate[]{
                 new Coordinate(minX, minY),
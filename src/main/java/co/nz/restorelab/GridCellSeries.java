@@ -0,0 +1,62 @@
+package co.nz.restorelab;
+
+import org.locationtech.jts.geom.Polygon;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A grid cell holding a running sum and count of values for each time window of a series.
+ */
+public class GridCellSeries {
+    private final int row;
+    private final int col;
+    private final Polygon polygon;
+    private final double[] sums;
+    private final int[] counts;
+
+    public GridCellSeries(int col, int row, Polygon polygon, int windows) {
+        this.col = col;
+        this.row = row;
+        this.polygon = polygon;
+        this.sums = new double[windows];
+        this.counts = new int[windows];
+    }
+
+    public void add(int window, double smc_value) {
+        sums[window] += smc_value;
+        counts[window]++;
+    }
+
+    public int count(int window) {
+        return counts[window];
+    }
+
+    /**
+     * @return the mean for the window, or null when no values fell in it
+     */
+    public Double average(int window) {
+        return counts[window] == 0 ? null : sums[window] / counts[window];
+    }
+
+    public Polygon getPolygon() {
+        return polygon;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        GridCellSeries that = (GridCellSeries) o;
+        return row == that.row && col == that.col;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(row, col);
+    }
+
+    @Override
+    public String toString() {
+        return "GridCellSeries[col=" + col + ", row="+row+", polygon="+polygon+", counts="+ Arrays.toString(counts);
+    }
+}
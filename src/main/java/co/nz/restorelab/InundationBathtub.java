@@ -2,56 +2,103 @@ package co.nz.restorelab;
 
 import org.geoserver.catalog.*;
 import org.geoserver.wps.gs.GeoServerProcess;
-import org.geotools.api.coverage.grid.GridCoordinates;
 import org.geotools.api.coverage.grid.GridEnvelope;
 import org.geotools.api.data.SimpleFeatureSource;
 import org.geotools.api.feature.simple.SimpleFeature;
 import org.geotools.api.filter.Filter;
 import org.geotools.api.filter.FilterFactory;
 import org.geotools.api.filter.expression.Expression;
+import org.geotools.api.metadata.spatial.PixelOrientation;
 import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.api.referencing.datum.PixelInCell;
 import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.api.referencing.operation.TransformException;
+import org.geotools.api.util.ProgressListener;
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.GridCoverageFactory;
 import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.coverage.processing.Operations;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.geometry.Position2D;
-import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.process.ProcessException;
 import org.geotools.process.factory.DescribeParameter;
 import org.geotools.process.factory.DescribeProcess;
 import org.geotools.process.factory.DescribeResult;
 import org.geotools.referencing.CRS;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
+import org.springframework.beans.factory.DisposableBean;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.geom.Point2D;
 import java.awt.image.*;
-import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
 
 @DescribeProcess(title = "floodingInundationBathtub", description = "Runs Inundation Bathtub model on the inundation data points.")
-public class InundationBathtub implements GeoServerProcess {
+public class InundationBathtub implements GeoServerProcess, DisposableBean {
+    private static final Logger LOGGER = Logging.getLogger(InundationBathtub.class);
+    // Buffer (in DEM CRS units) cropped around each cluster of observations
+    static final double AOI_BUFFER = 0.1;
+    private static final double DEFAULT_CLUSTER_DISTANCE = 0.5;
+    private static final ProcessMetrics METRICS = ProcessMetrics.forProcess("floodingInundationBathtub");
+    // How often the request thread polls for cancellation while waiting on parallel fills
+    private static final long CANCEL_POLL_MILLIS = 250;
+
     Catalog catalog;
+    // Shared by every request so concurrent parallel runs cannot oversubscribe the server. Created on
+    // the first parallel run and shut down with the application context so redeploys leak no threads
+    private ExecutorService fillExecutor;
 
     InundationBathtub(Catalog catalog) {
         this.catalog = catalog;
     }
 
+    private synchronized ExecutorService fillExecutor() {
+        if (fillExecutor == null) {
+            fillExecutor = Executors.newFixedThreadPool(
+                    Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "bathtub-fill");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        return fillExecutor;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (fillExecutor != null) {
+            fillExecutor.shutdownNow();
+            fillExecutor = null;
+        }
+    }
+
     @DescribeResult(description = "The output from the bathtub model")
     public GridCoverage2D execute(
             @DescribeParameter(name = "startTime", description = "Starting Date Time for range") String startTime,
-            @DescribeParameter(name = "endTime", description = "Ending Date Time for range") String endTime
+            @DescribeParameter(name = "endTime", description = "Ending Date Time for range") String endTime,
+            @DescribeParameter(name = "clusterDistance", description = "Grid spacing (in DEM CRS units) used to group observations into windows. Observations in the same or touching grid squares share a window, so observations up to about 2.8 times this distance apart may be joined", defaultValue = "0.5", min = 0) Double clusterDistance,
+            @DescribeParameter(name = "parallel", description = "Fill the cluster windows concurrently on a shared, bounded pool of threads", defaultValue = "false", min = 0) Boolean parallel,
+            ProgressListener monitor
 //            @DescribeParameter(name = "outputCRS", description = "Change the default CRS to output", defaultValue = "EPSG:3857") String crs
     ) throws ProcessException {
-        try {
+        if (monitor != null) monitor.started();
+        ProgressTracker progress = new ProgressTracker(monitor, 0, 0, 0);
+        try (ExecutionRecorder recorder = new ExecutionRecorder(METRICS)) {
             LayerInfo layerInfo = catalog.getLayerByName("restore-lab:flooded_measurements");
             ResourcePool resourcePool = catalog.getResourcePool();
 
@@ -101,90 +148,200 @@ public class InundationBathtub implements GeoServerProcess {
 
             // Load in the DEM
             CoverageInfo demCoverage = catalog.getCoverageByName("restore-lab:NZ_DEM_4326_30m");
-            GridCoverage2D dem = (GridCoverage2D) resourcePool.getGridCoverage(demCoverage, null, null);
+            GridCoverage2D dem;
+            try (ExecutionRecorder.Stage ignored = recorder.stage("dem_load")) {
+                dem = (GridCoverage2D) resourcePool.getGridCoverage(demCoverage, null, null);
+            }
             CoordinateReferenceSystem demCRS = dem.getCoordinateReferenceSystem2D();
 
             // Create a transform to go from source to target
             MathTransform transform = CRS.findMathTransform(pointCRS, demCRS, true);
 
-            // Compute AOI BBOX and collect grid seeds
-            double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
-            double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
-            Deque<Point2D.Double> queue = new ArrayDeque<>();
-
+            // Stream the seeds into primitive buffers, transforming to the DEM CRS in batches
+            SeedBuffer seeds = new SeedBuffer(transform);
+            ProgressTracker seedProgress = progress.stage(0, 10, 0);
+            long read = 0;
+            long readStart = System.nanoTime();
+            long queryNanos;
             try (SimpleFeatureIterator it = featureCollection.features()) {
+                // The collection is lazy, so the query runs when the iterator is opened
+                queryNanos = System.nanoTime() - readStart;
                 while (it.hasNext()) {
+                    seedProgress.step(read++);
                     SimpleFeature f = it.next();
-                    // Convert from source CRS to target (dem)
-                    Geometry geom3857 = (Geometry) f.getDefaultGeometry();
-                    Geometry geom4326 = JTS.transform(geom3857, transform);
-                    double lon = geom4326.getCoordinate().x;
-                    double lat = geom4326.getCoordinate().y;
-                    minLon = Math.min(minLon, lon);
-                    maxLon = Math.max(maxLon, lon);
-                    minLat = Math.min(minLat, lat);
-                    maxLat = Math.max(maxLat, lat);
-
-                    queue.add(new Point2D.Double(lon, lat));
+                    Geometry geom = (Geometry) f.getDefaultGeometry();
+                    if (geom == null || geom.isEmpty()) continue;
+                    Coordinate c = geom.getCoordinate();
+                    seeds.add(c.x, c.y);
                 }
             }
+            seeds.flush();
+            recorder.record("query", queryNanos);
+            recorder.record("read", System.nanoTime() - readStart - queryNanos - seeds.getTransformNanos());
+            recorder.record("reproject", seeds.getTransformNanos());
+            recorder.count("features", seeds.getRead());
+            recorder.count("seeds_invalid", seeds.getInvalid());
+            seedProgress.done();
+
+            if (seeds.isEmpty()) {
+                throw new ProcessException("No flood observations found for date range");
+            }
 
-            // Crop dem to AOI
-            double buf = 0.1;
-            ReferencedEnvelope aoiEnv = new ReferencedEnvelope(
-                    minLon - buf, maxLon + buf,
-                    minLat - buf, maxLat + buf,
-                    demCRS
-            );
+            if (clusterDistance == null) {
+                clusterDistance = DEFAULT_CLUSTER_DISTANCE;
+            }
+            if (clusterDistance <= 0) {
+                throw new ProcessException("Cluster distance must be greater than zero");
+            }
+            List<SeedBuffer> clusters;
+            try (ExecutionRecorder.Stage ignored = recorder.stage("cluster")) {
+                clusters = seeds.cluster(clusterDistance, AOI_BUFFER, progress.stage(10, 12, 0));
+            }
+            recorder.count("windows", clusters.size());
+
+            // Crop and fill a separate window around each cluster
+            ProgressTracker fillProgress = progress.stage(12, 95, clusters.size());
+            List<FloodWindow> windows;
+            if (Boolean.TRUE.equals(parallel) && clusters.size() > 1) {
+                windows = fillConcurrently(dem, demCRS, clusters, fillProgress, recorder);
+            } else {
+                windows = new ArrayList<>(clusters.size());
+                for (int i = 0; i < clusters.size(); i++) {
+                    ProgressTracker windowProgress = fillProgress.part(i, clusters.size());
+                    FloodWindow window = fill(dem, demCRS, clusters.get(i), windowProgress, recorder);
+                    if (window != null) windows.add(window);
+                    fillProgress.report(i + 1);
+                }
+            }
+            if (windows.isEmpty()) {
+                throw new ProcessException("No flood observations found within the DEM");
+            }
+
+            GridCoverage2D result = mosaic(dem, windows, progress.stage(95, 100, windows.size()), recorder);
+            recorder.complete();
+            if (monitor != null) monitor.complete();
+            return result;
+        } catch (ProcessException e) {
+            if (monitor != null) monitor.exceptionOccurred(e);
+            throw e;
+        } catch (InterruptedException e) {
+            // Keep the interrupt for the caller, the remaining fills are already cancelled
+            Thread.currentThread().interrupt();
+            if (monitor != null) monitor.exceptionOccurred(e);
+            throw new ProcessException("Bathtub model interrupted", e);
+        } catch (Exception e) {
+            if (monitor != null) monitor.exceptionOccurred(e);
+            throw new ProcessException("Error running bathtub model", e);
+        }
+    }
+
+    /**
+     * Fills the windows on the shared executor. Workers only see a detached progress tracker, so the
+     * listener is polled for cancellation and told about progress from this thread alone.
+     */
+    private List<FloodWindow> fillConcurrently(GridCoverage2D dem, CoordinateReferenceSystem demCRS,
+                                                      List<SeedBuffer> clusters, ProgressTracker progress,
+                                                      ExecutionRecorder recorder) throws InterruptedException {
+        ProgressTracker workerProgress = progress.detached();
+        ExecutorService executor = fillExecutor();
+        List<Future<FloodWindow>> futures = new ArrayList<>(clusters.size());
+        for (SeedBuffer cluster : clusters) {
+            futures.add(executor.submit(() -> fill(dem, demCRS, cluster, workerProgress, recorder)));
+        }
+
+        List<FloodWindow> windows = new ArrayList<>(clusters.size());
+        int filled = 0;
+        try {
+            for (Future<FloodWindow> future : futures) {
+                FloodWindow window;
+                while (true) {
+                    try {
+                        window = future.get(CANCEL_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        progress.checkCancelled();
+                    }
+                }
+                // Clusters outside the DEM have no window
+                if (window != null) windows.add(window);
+                progress.report(++filled);
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ProcessException) {
+                throw (ProcessException) e.getCause();
+            }
+            throw new ProcessException("Error filling bathtub window", e.getCause());
+        } finally {
+            if (filled < futures.size()) {
+                // Stop the remaining workers at their next cancellation check
+                progress.cancel();
+                for (Future<FloodWindow> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * Crops the DEM around the seeds and floods it from them. Returns null, counting the seeds as
+     * outside, when the buffered seeds do not overlap the DEM.
+     */
+    static FloodWindow fill(GridCoverage2D dem, CoordinateReferenceSystem demCRS, SeedBuffer seeds,
+                            ProgressTracker progress, ExecutionRecorder recorder) {
+        GridGeometry2D aoiGG;
+        int originX, originY, minX, minY, w, h;
+        Raster demRaster;
+        try (ExecutionRecorder.Stage ignored = recorder.stage("crop")) {
+            // Crop dem to the part of the AOI it covers, cropping outside the DEM throws
+            ReferencedEnvelope demEnv = ReferencedEnvelope.reference(dem.getEnvelope2D());
+            double aoiMinX = Math.max(seeds.getMinX() - AOI_BUFFER, demEnv.getMinX());
+            double aoiMaxX = Math.min(seeds.getMaxX() + AOI_BUFFER, demEnv.getMaxX());
+            double aoiMinY = Math.max(seeds.getMinY() - AOI_BUFFER, demEnv.getMinY());
+            double aoiMaxY = Math.min(seeds.getMaxY() + AOI_BUFFER, demEnv.getMaxY());
+            if (aoiMinX >= aoiMaxX || aoiMinY >= aoiMaxY) {
+                LOGGER.fine("Skipping bathtub window outside the DEM: " + seeds);
+                recorder.count("seeds_outside", seeds.size());
+                return null;
+            }
+            ReferencedEnvelope aoiEnv = new ReferencedEnvelope(aoiMinX, aoiMaxX, aoiMinY, aoiMaxY, demCRS);
             GridCoverage2D aoiDem = (GridCoverage2D) new Operations(null).crop(dem, aoiEnv);
 
-            GridGeometry2D aoiGG = aoiDem.getGridGeometry();
+            aoiGG = aoiDem.getGridGeometry();
             GridEnvelope aoiRange = aoiGG.getGridRange();
-            int originX = aoiRange.getLow(0);
-            int originY = aoiRange.getLow(1);
+            originX = aoiRange.getLow(0);
+            originY = aoiRange.getLow(1);
             RenderedImage renderedImage = aoiDem.getRenderedImage();
-            int minX = renderedImage.getMinX();
-            int minY = renderedImage.getMinY();
-            int w = renderedImage.getWidth();
-            int h = renderedImage.getHeight();
-
-            Raster demRaster = renderedImage.getData(new Rectangle(minX, minY, w, h));
-
-            Deque<Point> realQueue = new ArrayDeque<>();
-            for (Point2D.Double worldPt : queue) {
-                if (!aoiEnv.contains(new Position2D(worldPt))) {
-                    System.out.println("Point outside AOI: " + worldPt);
-                    continue;
-                }
-                try {
-                    GridCoordinates globalGC = aoiGG.worldToGrid(
-                            new Position2D(demCRS, worldPt.x, worldPt.y)
-                    );
-                    // these are in the original DEM pixel space:
-                    int globalCol = globalGC.getCoordinateValue(0);
-                    int globalRow = globalGC.getCoordinateValue(1);
-
-                    // shift them to [0…w-1],[0…h-1] in the cropped grid:
-                    int localCol = globalCol - originX;
-                    int localRow = globalRow - originY;
-
-                    if (localCol >= 0 && localCol < w && localRow >= 0 && localRow < h) {
-                        realQueue.add(new Point(localCol, localRow));
-                        System.out.println("Mapped to pixel: " +
-                                localCol + "," + localRow);
-                    } else {
-                        System.out.println("Mapped pixel outside raster: " +
-                                localCol + "," + localRow);
-                    }
-                } catch (Exception ex) {
-                    System.out.println("worldToGrid error: " + ex.getMessage());
-                }
+            minX = renderedImage.getMinX();
+            minY = renderedImage.getMinY();
+            w = renderedImage.getWidth();
+            h = renderedImage.getHeight();
+
+            demRaster = renderedImage.getData(new Rectangle(minX, minY, w, h));
+        }
+
+        int[] seedPixels;
+        BitSet mask = new BitSet(w * h);
+        try (ExecutionRecorder.Stage ignored = recorder.stage("fill")) {
+            // Map seeds to unique pixels in the cropped grid
+            try {
+                seedPixels = seeds.toPixels(aoiGG.getCRSToGrid2D(PixelOrientation.UPPER_LEFT), originX, originY, w, h);
+            } catch (TransformException e) {
+                throw new ProcessException("Error mapping seeds to the DEM grid", e);
             }
+            LOGGER.fine("Bathtub window " + w + "x" + h + " at " + originX + "," + originY
+                    + ": " + seeds + ", pixels=" + seedPixels.length);
 
-            // Run the bathtub model
-            BitSet mask = new BitSet(w * h);
-            System.out.println(realQueue.size());
+            Deque<Point> realQueue = new ArrayDeque<>(seedPixels.length);
+            for (int idx : seedPixels) {
+                realQueue.add(new Point(idx % w, idx / w));
+            }
+
+            // Run the bathtub model, reporting flooded pixels against the window size
+            ProgressTracker pixelProgress = progress.withTotal((long) w * h);
+            long visited = 0, flooded = 0;
             while (!realQueue.isEmpty()) {
+                if (++visited % ProgressTracker.REPORT_INTERVAL == 0) pixelProgress.report(flooded);
                 Point p = realQueue.pop();
                 int x0 = p.x, y0 = p.y;
 
@@ -198,6 +355,7 @@ public class InundationBathtub implements GeoServerProcess {
                 if (Double.isNaN(elevation)) continue;
 
                 mask.set(idx);
+                flooded++;
 
                 // Check 8 neighbors
                 for (int dy = -1; dy <= 1; dy++) {
@@ -220,52 +378,70 @@ public class InundationBathtub implements GeoServerProcess {
                     }
                 }
             }
+        }
 
-            System.out.println("Flooded cells: " + mask.cardinality());
+        recorder.count("dem_pixels", (long) w * h);
+        recorder.count("seed_pixels", seedPixels.length);
+        recorder.count("seeds_outside", seeds.getOutside());
+        recorder.count("seeds_duplicate", seeds.getDuplicates());
+        return new FloodWindow(originX, originY, w, h, mask);
+    }
 
-            BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
-            for (int y = 0; y < h; y++) {
-                for (int x = 0; x < w; x++) {
-                    int i = y * w + x;
-                    int val = mask.get(i) ? 255 : 0;
-                    img.getRaster().setSample(x, y, 0, val);
-                }
+    static GridCoverage2D mosaic(GridCoverage2D dem, List<FloodWindow> windows, ProgressTracker progress,
+                                 ExecutionRecorder recorder) {
+        try (ExecutionRecorder.Stage ignored = recorder.stage("mosaic")) {
+            // All windows are crops of the same DEM so they share its pixel grid
+            int minCol = Integer.MAX_VALUE, minRow = Integer.MAX_VALUE;
+            int maxCol = Integer.MIN_VALUE, maxRow = Integer.MIN_VALUE;
+            for (FloodWindow window : windows) {
+                minCol = Math.min(minCol, window.originX);
+                minRow = Math.min(minRow, window.originY);
+                maxCol = Math.max(maxCol, window.originX + window.width);
+                maxRow = Math.max(maxRow, window.originY + window.height);
             }
-            ImageIO.write(img, "png", new File("/tmp/flood-debug.png"));
-
-            SampleModel sm = new MultiPixelPackedSampleModel(
-                    DataBuffer.TYPE_BYTE,
-                    w,
-                    h,
-                    1
-            );
-
-            int bytesPerRow = (int) Math.ceil(w / 8.0);
-            int packedBytes = bytesPerRow * h;
-            byte[] packedData = new byte[packedBytes];
-
-
-            for (int y = 0; y < h; y++) {
-                for (int x = 0; x < w; x++) {
-                    int i = y * w + x;
-                    if (mask.get(i)) {
-                        int byteIndex = y * bytesPerRow + (x / 8);
-                        int bitIndex = 7 - (x % 8); // MSB first
-                        packedData[byteIndex] |= (byte) (1 << bitIndex);
-                    }
-                }
+            int w = maxCol - minCol;
+            int h = maxRow - minRow;
+
+            long flooded = 0;
+            int mosaicked = 0;
+            for (FloodWindow window : windows) {
+                progress.report(mosaicked++);
+                flooded += window.mask.cardinality();
             }
-
-
-            DataBufferByte dataBuffer = new DataBufferByte(packedData, packedData.length);
-//
-            WritableRaster outRaster = WritableRaster.createWritableRaster(sm, dataBuffer, new Point(0,0));
+            progress.done();
+            recorder.count("flooded_pixels", flooded);
+
+            // Tiles are computed from the window masks as they are read, nothing is allocated for the gaps
+            FloodMaskImage outImage = new FloodMaskImage(windows, minCol, minRow, w, h);
+
+            GridGeometry2D outGG = new GridGeometry2D(
+                    new GridEnvelope2D(minCol, minRow, w, h),
+                    PixelInCell.CELL_CORNER,
+                    dem.getGridGeometry().getGridToCRS2D(PixelOrientation.UPPER_LEFT),
+                    dem.getCoordinateReferenceSystem2D(),
+                    null
+            );
             GridCoverageFactory gridCoverageFactory = new GridCoverageFactory();
-            return gridCoverageFactory.create("bathtub_flood", outRaster, aoiDem.getEnvelope2D());
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            System.out.println(Arrays.toString(e.getStackTrace()));
+            return gridCoverageFactory.create("bathtub_flood", outImage, outGG.getEnvelope2D());
+        }
+    }
+
+    /**
+     * Flooded pixels of one cropped DEM window, positioned in the pixel grid of the full DEM.
+     */
+    static class FloodWindow {
+        final int originX;
+        final int originY;
+        final int width;
+        final int height;
+        final BitSet mask;
+
+        FloodWindow(int originX, int originY, int width, int height, BitSet mask) {
+            this.originX = originX;
+            this.originY = originY;
+            this.width = width;
+            this.height = height;
+            this.mask = mask;
         }
-        return null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,160 @@
+package co.nz.restorelab;
+
+import org.geotools.util.logging.Logging;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process wide meters for one WPS process, published over JMX as
+ * {@code co.nz.restorelab:type=ProcessMetrics,name=<process>}. Each execution records into an
+ * {@link ExecutionRecorder} which is merged in here once the execution finishes.
+ */
+class ProcessMetrics implements ProcessMetricsMBean {
+    private static final Logger LOGGER = Logging.getLogger(ProcessMetrics.class);
+    private static final Map<String, ProcessMetrics> REGISTRY = new ConcurrentHashMap<>();
+
+    // Every execution is also recorded under this stage
+    static final String TOTAL = "total";
+
+    private final String process;
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Map<String, StageTimer> stages = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    ProcessMetrics(String process) {
+        this.process = process;
+    }
+
+    /**
+     * Returns the meters for the named process, registering them with JMX the first time.
+     */
+    static ProcessMetrics forProcess(String process) {
+        return REGISTRY.computeIfAbsent(process, name -> {
+            ProcessMetrics metrics = new ProcessMetrics(name);
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName objectName = new ObjectName("co.nz.restorelab:type=ProcessMetrics,name=" + name);
+                if (!server.isRegistered(objectName)) {
+                    server.registerMBean(metrics, objectName);
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Unable to register metrics for " + name, e);
+            }
+            return metrics;
+        });
+    }
+
+    String getProcess() {
+        return process;
+    }
+
+    void record(Map<String, Long> stageNanos, Map<String, Long> counts, boolean completed) {
+        executions.increment();
+        if (!completed) failures.increment();
+        for (Map.Entry<String, Long> stage : stageNanos.entrySet()) {
+            stages.computeIfAbsent(stage.getKey(), k -> new StageTimer()).record(stage.getValue());
+        }
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            counters.computeIfAbsent(count.getKey(), k -> new LongAdder()).add(count.getValue());
+        }
+    }
+
+    @Override
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public String[] getStageNames() {
+        return stages.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getCounterNames() {
+        return counters.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public long getStageCount(String stage) {
+        StageTimer timer = stages.get(stage);
+        return timer == null ? 0 : timer.count.sum();
+    }
+
+    @Override
+    public double getStageMeanMillis(String stage) {
+        StageTimer timer = stages.get(stage);
+        if (timer == null || timer.count.sum() == 0) return 0;
+        return timer.totalNanos.sum() / 1e6 / timer.count.sum();
+    }
+
+    @Override
+    public double getStageMaxMillis(String stage) {
+        StageTimer timer = stages.get(stage);
+        return timer == null ? 0 : timer.maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public double getStagePercentileMillis(String stage, double percentile) {
+        StageTimer timer = stages.get(stage);
+        return timer == null ? 0 : timer.percentileMillis(percentile);
+    }
+
+    @Override
+    public long getCounter(String counter) {
+        LongAdder adder = counters.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * Latency meter with a base 2 histogram of microseconds, so percentiles report the upper
+     * bound of the bucket they fall in.
+     */
+    static class StageTimer {
+        private static final int BUCKETS = 40;
+
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        // Bucket i holds durations below 2^i microseconds
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            int bucket = 64 - Long.numberOfLeadingZeros(Math.max(0, nanos / 1000));
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, bucket));
+        }
+
+        double percentileMillis(double percentile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) total += buckets.get(i);
+            if (total == 0) return 0;
+
+            long rank = (long) Math.ceil(Math.min(1, Math.max(0, percentile)) * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return (1L << i) / 1000.0;
+                }
+            }
+            return (1L << (BUCKETS - 1)) / 1000.0;
+        }
+    }
+}
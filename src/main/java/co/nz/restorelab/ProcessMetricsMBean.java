@@ -0,0 +1,25 @@
+package co.nz.restorelab;
+
+/**
+ * JMX view of the meters recorded for one WPS process. Stage times are summed across threads
+ * for stages that run in parallel, and percentiles are approximate to within a factor of two.
+ */
+public interface ProcessMetricsMBean {
+    long getExecutions();
+
+    long getFailures();
+
+    String[] getStageNames();
+
+    String[] getCounterNames();
+
+    long getStageCount(String stage);
+
+    double getStageMeanMillis(String stage);
+
+    double getStageMaxMillis(String stage);
+
+    double getStagePercentileMillis(String stage, double percentile);
+
+    long getCounter(String counter);
+}
@@ -0,0 +1,117 @@
+package co.nz.restorelab;
+
+import org.geotools.api.util.ProgressListener;
+import org.geotools.process.ProcessException;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reports progress for one stage of a process to an optional {@link ProgressListener}.
+ * The stage counts its own steps, which are mapped onto a slice of the listener's 0-100 range,
+ * and cancellation is checked every time progress is reported.
+ * <p>
+ * Trackers created from one another share a cancellation flag. A {@link #detached()} tracker
+ * never calls the listener and only sees that flag, so it can be handed to worker threads while
+ * the listener is only ever used from the thread running the process.
+ */
+class ProgressTracker {
+    // Number of steps between progress reports and cancellation checks
+    static final int REPORT_INTERVAL = 1024;
+    // When the step count is unknown, progress is reported as done / (done + UNKNOWN_TOTAL_SCALE)
+    // so it keeps moving without ever reaching the end of the stage early
+    static final long UNKNOWN_TOTAL_SCALE = 100_000;
+
+    private final ProgressListener listener;
+    private final float start;
+    private final float end;
+    private final long total;
+    private final AtomicBoolean cancelled;
+
+    /**
+     * @param listener listener to report to, may be null
+     * @param start    percentage reported at the start of the stage
+     * @param end      percentage reported once the stage is done
+     * @param total    number of steps in the stage, zero or less when unknown
+     */
+    ProgressTracker(ProgressListener listener, float start, float end, long total) {
+        this(listener, start, end, total, new AtomicBoolean());
+    }
+
+    private ProgressTracker(ProgressListener listener, float start, float end, long total, AtomicBoolean cancelled) {
+        this.listener = listener;
+        this.start = start;
+        this.end = end;
+        this.total = total;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Creates a tracker for a later stage reporting to the same listener.
+     */
+    ProgressTracker stage(float start, float end, long total) {
+        return new ProgressTracker(listener, start, end, total, cancelled);
+    }
+
+    /**
+     * Creates a tracker for the same slice of progress with a step count that is only known later.
+     */
+    ProgressTracker withTotal(long total) {
+        return new ProgressTracker(listener, start, end, total, cancelled);
+    }
+
+    /**
+     * Creates a tracker for part {@code index} of {@code count} equal parts of this stage.
+     */
+    ProgressTracker part(int index, int count) {
+        float span = (end - start) / count;
+        return new ProgressTracker(listener, start + span * index, start + span * (index + 1), 0, cancelled);
+    }
+
+    /**
+     * Creates a tracker for worker threads, which only checks the shared cancellation flag.
+     */
+    ProgressTracker detached() {
+        return new ProgressTracker(null, start, end, total, cancelled);
+    }
+
+    /**
+     * Flags this tracker, and every tracker sharing its flag, as cancelled.
+     */
+    void cancel() {
+        cancelled.set(true);
+    }
+
+    /**
+     * Records that {@code done} steps have completed, reporting every {@link #REPORT_INTERVAL} steps.
+     */
+    void step(long done) {
+        if (done % REPORT_INTERVAL == 0) {
+            report(done);
+        }
+    }
+
+    void report(long done) {
+        checkCancelled();
+        if (listener == null) return;
+        float fraction = total > 0
+                ? (float) Math.min(done, total) / total
+                : (float) done / (done + UNKNOWN_TOTAL_SCALE);
+        listener.progress(start + (end - start) * fraction);
+    }
+
+    void done() {
+        checkCancelled();
+        if (listener != null) {
+            listener.progress(end);
+        }
+    }
+
+    void checkCancelled() {
+        if (listener != null && listener.isCanceled()) {
+            cancelled.set(true);
+        }
+        if (cancelled.get()) {
+            throw new ProcessException("Process cancelled");
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package co.nz.restorelab;
+
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.api.referencing.operation.TransformException;
+import org.geotools.referencing.operation.transform.IdentityTransform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects flood seed coordinates as interleaved x/y pairs in primitive arrays.
+ * Points are transformed into the target CRS in batches as they are added and
+ * mapped to unique pixel indices in a single pass once the raster window is known.
+ */
+class SeedBuffer {
+    private static final int BATCH_SIZE = 1024;
+
+    private final MathTransform transform;
+    private final double[] pending = new double[BATCH_SIZE * 2];
+    private int pendingCount;
+
+    private double[] coords = new double[BATCH_SIZE * 2];
+    private int size;
+
+    private double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+    private double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+    private int read;
+    private int invalid;
+    private int outside;
+    private int duplicates;
+    private long transformNanos;
+
+    /**
+     * @param transform transform from the source CRS of the added points to the target (DEM) CRS
+     */
+    SeedBuffer(MathTransform transform) {
+        this.transform = transform;
+    }
+
+    /**
+     * Creates an empty buffer for points already in the target CRS.
+     */
+    private SeedBuffer() {
+        this(IdentityTransform.create(2));
+    }
+
+    void add(double x, double y) {
+        pending[pendingCount * 2] = x;
+        pending[pendingCount * 2 + 1] = y;
+        pendingCount++;
+        read++;
+        if (pendingCount == BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Transforms any pending points into the target CRS. Must be called once all points are added.
+     * Points that fail to transform are counted as invalid and dropped.
+     */
+    void flush() {
+        if (pendingCount == 0) return;
+        ensureCapacity(size + pendingCount);
+
+        int offset = size * 2;
+        long start = System.nanoTime();
+        try {
+            transform.transform(pending, 0, coords, offset, pendingCount);
+        } catch (TransformException e) {
+            // Projections fail the whole batch when any point fails, so retry the points one by one
+            transformEach(offset);
+        }
+        transformNanos += System.nanoTime() - start;
+
+        // Compact in place, dropping points that failed to transform
+        int end = offset + pendingCount * 2;
+        for (int i = offset; i < end; i += 2) {
+            double x = coords[i];
+            double y = coords[i + 1];
+            if (Double.isNaN(x) || Double.isNaN(y) || Double.isInfinite(x) || Double.isInfinite(y)) {
+                invalid++;
+                continue;
+            }
+            push(x, y);
+        }
+        pendingCount = 0;
+    }
+
+    /**
+     * Transforms the pending points one at a time, setting any point that fails to NaN.
+     */
+    private void transformEach(int offset) {
+        for (int i = 0; i < pendingCount; i++) {
+            int at = offset + i * 2;
+            try {
+                transform.transform(pending, i * 2, coords, at, 1);
+            } catch (TransformException e) {
+                coords[at] = Double.NaN;
+                coords[at + 1] = Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * Splits the buffered points into spatial clusters. Points whose {@code distance} sized bins touch
+     * share a cluster, and clusters whose bounds overlap once grown by {@code buffer} are merged so that
+     * the windows cropped around them never intersect.
+     *
+     * @param distance bin size in target CRS units, observations further apart than this are split
+     * @param buffer   buffer added around each cluster when it is cropped
+     */
+    List<SeedBuffer> cluster(double distance, double buffer) {
+        return cluster(distance, buffer, new ProgressTracker(null, 0, 100, 0));
+    }
+
+    /**
+     * Clusters the points as {@link #cluster(double, double)}, checking for cancellation while merging.
+     */
+    List<SeedBuffer> cluster(double distance, double buffer, ProgressTracker progress) {
+        // Bin every point and join touching bins
+        Map<Long, Integer> bins = new HashMap<>();
+        int[] pointBin = new int[size];
+        List<long[]> binCells = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            long bx = (long) Math.floor(coords[i * 2] / distance);
+            long by = (long) Math.floor(coords[i * 2 + 1] / distance);
+            Long key = binKey(bx, by);
+            Integer bin = bins.get(key);
+            if (bin == null) {
+                bin = binCells.size();
+                bins.put(key, bin);
+                binCells.add(new long[]{bx, by});
+            }
+            pointBin[i] = bin;
+        }
+
+        int[] binParent = identity(binCells.size());
+        for (int bin = 0; bin < binCells.size(); bin++) {
+            long[] cell = binCells.get(bin);
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    Integer neighbour = bins.get(binKey(cell[0] + dx, cell[1] + dy));
+                    if (neighbour != null) union(binParent, bin, neighbour);
+                }
+            }
+        }
+
+        // Bounds per connected group of bins
+        Map<Integer, Integer> rootToCluster = new HashMap<>();
+        List<double[]> bounds = new ArrayList<>();
+        int[] pointCluster = new int[size];
+        for (int i = 0; i < size; i++) {
+            int root = find(binParent, pointBin[i]);
+            Integer cluster = rootToCluster.get(root);
+            if (cluster == null) {
+                cluster = bounds.size();
+                rootToCluster.put(root, cluster);
+                bounds.add(new double[]{Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                        Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY});
+            }
+            pointCluster[i] = cluster;
+            double[] b = bounds.get(cluster);
+            b[0] = Math.min(b[0], coords[i * 2]);
+            b[1] = Math.max(b[1], coords[i * 2]);
+            b[2] = Math.min(b[2], coords[i * 2 + 1]);
+            b[3] = Math.max(b[3], coords[i * 2 + 1]);
+        }
+
+        // Merge clusters until no two buffered windows overlap. Each pass sweeps the clusters in order
+        // of their western edge, only comparing against clusters still open at that edge. A merge can
+        // grow a window into one the sweep has already passed, so passes repeat until nothing merges.
+        int[] clusterParent = identity(bounds.size());
+        List<Integer> roots = new ArrayList<>(bounds.size());
+        for (int c = 0; c < bounds.size(); c++) roots.add(c);
+        long swept = 0;
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            roots.sort(Comparator.comparingDouble(c -> bounds.get(c)[0]));
+            List<Integer> open = new ArrayList<>();
+            List<Integer> next = new ArrayList<>(roots.size());
+            for (int c : roots) {
+                progress.step(swept++);
+                double[] bc = bounds.get(c);
+                Integer target = null;
+                for (int i = open.size() - 1; i >= 0; i--) {
+                    double[] bo = bounds.get(open.get(i));
+                    if (bo[1] + buffer < bc[0] - buffer) {
+                        // Closed before this western edge, and so before every later one
+                        open.set(i, open.get(open.size() - 1));
+                        open.remove(open.size() - 1);
+                    } else if (target == null && bo[2] - buffer <= bc[3] + buffer && bc[2] - buffer <= bo[3] + buffer) {
+                        target = open.get(i);
+                    }
+                }
+                if (target == null) {
+                    open.add(c);
+                    next.add(c);
+                    continue;
+                }
+                double[] bt = bounds.get(target);
+                clusterParent[c] = target;
+                bt[0] = Math.min(bt[0], bc[0]);
+                bt[1] = Math.max(bt[1], bc[1]);
+                bt[2] = Math.min(bt[2], bc[2]);
+                bt[3] = Math.max(bt[3], bc[3]);
+                merged = true;
+            }
+            roots = next;
+        }
+
+        Map<Integer, SeedBuffer> clusters = new HashMap<>();
+        List<SeedBuffer> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            int root = find(clusterParent, pointCluster[i]);
+            SeedBuffer cluster = clusters.get(root);
+            if (cluster == null) {
+                cluster = new SeedBuffer();
+                clusters.put(root, cluster);
+                result.add(cluster);
+            }
+            cluster.read++;
+            cluster.push(coords[i * 2], coords[i * 2 + 1]);
+        }
+        return result;
+    }
+
+    private void push(double x, double y) {
+        ensureCapacity(size + 1);
+        coords[size * 2] = x;
+        coords[size * 2 + 1] = y;
+        size++;
+        minX = Math.min(minX, x);
+        maxX = Math.max(maxX, x);
+        minY = Math.min(minY, y);
+        maxY = Math.max(maxY, y);
+    }
+
+    private static Long binKey(long bx, long by) {
+        return (bx << 32) ^ (by & 0xffffffffL);
+    }
+
+    private static int[] identity(int n) {
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) parent[i] = i;
+        return parent;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int ra = find(parent, a);
+        int rb = find(parent, b);
+        if (ra != rb) parent[rb] = ra;
+    }
+
+    /**
+     * Maps every buffered point to a pixel of a {@code width} x {@code height} window and returns the
+     * unique pixel indices ({@code row * width + col}). Points falling outside the window or on an
+     * already seeded pixel are counted and skipped.
+     *
+     * @param crsToGrid transform from the target CRS to grid coordinates (upper left pixel corner)
+     * @param originX   grid column of the first pixel in the window
+     * @param originY   grid row of the first pixel in the window
+     */
+    int[] toPixels(MathTransform crsToGrid, int originX, int originY, int width, int height) throws TransformException {
+        double[] grid = new double[size * 2];
+        crsToGrid.transform(coords, 0, grid, 0, size);
+
+        BitSet seen = new BitSet(width * height);
+        int[] pixels = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            double gx = grid[i * 2];
+            double gy = grid[i * 2 + 1];
+            if (Double.isNaN(gx) || Double.isNaN(gy)) {
+                outside++;
+                continue;
+            }
+            int col = (int) Math.floor(gx) - originX;
+            int row = (int) Math.floor(gy) - originY;
+            if (col < 0 || col >= width || row < 0 || row >= height) {
+                outside++;
+                continue;
+            }
+            int idx = row * width + col;
+            if (seen.get(idx)) {
+                duplicates++;
+                continue;
+            }
+            seen.set(idx);
+            pixels[count++] = idx;
+        }
+        return Arrays.copyOf(pixels, count);
+    }
+
+    private void ensureCapacity(int points) {
+        if (points * 2 <= coords.length) return;
+        int capacity = Math.max(points * 2, coords.length * 2);
+        coords = Arrays.copyOf(coords, capacity);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    double getMinX() {
+        return minX;
+    }
+
+    double getMaxX() {
+        return maxX;
+    }
+
+    double getMinY() {
+        return minY;
+    }
+
+    double getMaxY() {
+        return maxY;
+    }
+
+    int getRead() {
+        return read;
+    }
+
+    int getInvalid() {
+        return invalid;
+    }
+
+    int getOutside() {
+        return outside;
+    }
+
+    int getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Time spent transforming points into the target CRS.
+     */
+    long getTransformNanos() {
+        return transformNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SeedBuffer[read=" + read + ", valid=" + size + ", invalid=" + invalid
+                + ", outside=" + outside + ", duplicates=" + duplicates + "]";
+    }
+}
@@ -12,6 +12,7 @@ import org.geotools.api.filter.FilterFactory;
 import org.geotools.api.filter.expression.Expression;
 import org.geotools.api.referencing.FactoryException;
 import org.geotools.api.referencing.operation.NoninvertibleTransformException;
+import org.geotools.api.util.ProgressListener;
 import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.factory.CommonFactoryFinder;
@@ -29,6 +30,8 @@ import java.util.List;
 
 @DescribeProcess(title = "temporalGridChange", description = "Computes the gridded change between two date ranges for the soil moisture dataset.")
 public class TemporalGridChange implements GeoServerProcess {
+    private static final ProcessMetrics METRICS = ProcessMetrics.forProcess("temporalGridChange");
+
     Catalog catalog;
 
     TemporalGridChange(Catalog catalog) {
@@ -40,8 +43,21 @@ public class TemporalGridChange implements GeoServerProcess {
             @DescribeParameter(name = "endTime1", description = "Ending Date Time for time period 1") String endTime1,
             @DescribeParameter(name = "startTime2", description = "Starting Date Time for time period 2") String startTime2,
             @DescribeParameter(name = "endTime2", description = "Ending Date Time for time period 2") String endTime2,
-            @DescribeParameter(name = "outputCRS", description = "Change the default CRS to output", defaultValue = "EPSG:3857") String crs
+            @DescribeParameter(name = "outputCRS", description = "Change the default CRS to output", defaultValue = "EPSG:3857") String crs,
+            ProgressListener monitor
     ) throws ProcessException {
+        try (ExecutionRecorder recorder = new ExecutionRecorder(METRICS)) {
+            SimpleFeatureCollection result = run(startTime1, endTime1, startTime2, endTime2, crs, monitor, recorder);
+            recorder.complete();
+            return result;
+        } catch (RuntimeException e) {
+            if (monitor != null) monitor.exceptionOccurred(e);
+            throw e;
+        }
+    }
+
+    private SimpleFeatureCollection run(String startTime1, String endTime1, String startTime2, String endTime2,
+                                        String crs, ProgressListener monitor, ExecutionRecorder recorder) {
         LayerInfo layerInfo = catalog.getLayerByName("restore-lab:smc_measurements");
 
         if (layerInfo == null) {
@@ -94,6 +110,9 @@ public class TemporalGridChange implements GeoServerProcess {
         } catch (IOException e) {
             throw new ProcessException("Error getting features", e);
         }
+        if (monitor != null) monitor.started();
+        ProgressTracker progress = new ProgressTracker(monitor, 0, 0, 0);
+
         GridCalculator gridCalculator;
         try {
             gridCalculator = new GridCalculator(5000);
@@ -103,10 +122,10 @@ public class TemporalGridChange implements GeoServerProcess {
             throw new ProcessException("Error creating inverse crs transformer", e);
         }
 
-        List<GridCell> grid1 = gridCalculator.aggregate(range1);
-        List<GridCell> grid2 = gridCalculator.aggregate(range2);
+        // Progress is reported without a total rather than issuing a count query per range
+        List<GridCell> grid1 = gridCalculator.aggregate(range1, progress.stage(0, 45, 0), recorder);
+        List<GridCell> grid2 = gridCalculator.aggregate(range2, progress.stage(45, 90, 0), recorder);
 
-        List<SimpleFeature> results = new ArrayList<>();
         SimpleFeatureType resultType;
         try {
             resultType = gridCalculator.getResultFeatureType(crs);
@@ -114,10 +133,30 @@ public class TemporalGridChange implements GeoServerProcess {
             throw new ProcessException("Error decoding CRS value");
         }
 
+        ProgressTracker joinProgress = progress.stage(90, 100, grid1.size());
+        List<SimpleFeature> results;
+        try (ExecutionRecorder.Stage ignored = recorder.stage("join")) {
+            results = join(grid1, grid2, resultType, joinProgress);
+        }
+        recorder.count("output_features", results.size());
+
+        joinProgress.done();
+        if (monitor != null) monitor.complete();
+        return new ListFeatureCollection(resultType, results);
+    }
+
+    /**
+     * Builds a change feature for every cell of the first grid, treating cells missing from the
+     * second grid as zero.
+     */
+    static List<SimpleFeature> join(List<GridCell> grid1, List<GridCell> grid2, SimpleFeatureType resultType,
+                                    ProgressTracker progress) {
+        List<SimpleFeature> results = new ArrayList<>();
         SimpleFeatureBuilder builder = new SimpleFeatureBuilder(resultType);
         int fid = 0;
 
         for (GridCell cell: grid1) {
+            progress.step(fid);
             double val1 = cell.average();
             double val2;
             if (!grid2.contains(cell)) {
@@ -130,7 +169,6 @@ public class TemporalGridChange implements GeoServerProcess {
             builder.add(change);
             results.add(builder.buildFeature(String.valueOf(fid++)));
         }
-
-        return new ListFeatureCollection(resultType, results);
+        return results;
     }
 }
@@ -0,0 +1,267 @@
+package co.nz.restorelab;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.wps.gs.GeoServerProcess;
+import org.geotools.api.data.SimpleFeatureSource;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.filter.Filter;
+import org.geotools.api.filter.FilterFactory;
+import org.geotools.api.filter.expression.Expression;
+import org.geotools.api.referencing.FactoryException;
+import org.geotools.api.referencing.operation.NoninvertibleTransformException;
+import org.geotools.api.util.ProgressListener;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.process.ProcessException;
+import org.geotools.process.factory.DescribeParameter;
+import org.geotools.process.factory.DescribeProcess;
+import org.geotools.process.factory.DescribeResult;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.time.Period;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+@DescribeProcess(title = "temporalGridChangeSeries", description = "Computes the gridded soil moisture mean for a series of date ranges, and the change between consecutive ranges, in a single scan.")
+public class TemporalGridChangeSeries implements GeoServerProcess {
+    private static final ProcessMetrics METRICS = ProcessMetrics.forProcess("temporalGridChangeSeries");
+    // Upper bound on the number of windows, each adds two attributes to the result
+    static final int MAX_WINDOWS = 1000;
+
+    Catalog catalog;
+
+    TemporalGridChangeSeries(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @DescribeResult(description = "The gridded mean for each date range and the change from the previous range.")
+    public SimpleFeatureCollection execute(
+            @DescribeParameter(name = "windows", description = "Comma separated start/end Date Time pairs, e.g. 2025-01-01T00:00:00/2025-02-01T00:00:00", min = 0) String windows,
+            @DescribeParameter(name = "startTime", description = "Starting Date Time of the series, used with interval", min = 0) String startTime,
+            @DescribeParameter(name = "endTime", description = "Ending Date Time of the series, exclusive, used with interval", min = 0) String endTime,
+            @DescribeParameter(name = "interval", description = "ISO-8601 period or duration of each date range, e.g. P1M or PT12H", min = 0) String interval,
+            @DescribeParameter(name = "outputCRS", description = "Change the default CRS to output", defaultValue = "EPSG:3857") String crs,
+            ProgressListener monitor
+    ) throws ProcessException {
+        try (ExecutionRecorder recorder = new ExecutionRecorder(METRICS)) {
+            SimpleFeatureCollection result = run(windows, startTime, endTime, interval, crs, monitor, recorder);
+            recorder.complete();
+            return result;
+        } catch (RuntimeException e) {
+            if (monitor != null) monitor.exceptionOccurred(e);
+            throw e;
+        }
+    }
+
+    private SimpleFeatureCollection run(String windows, String startTime, String endTime, String interval,
+                                        String crs, ProgressListener monitor, ExecutionRecorder recorder) {
+        LayerInfo layerInfo = catalog.getLayerByName("restore-lab:smc_measurements");
+
+        if (layerInfo == null) {
+            throw new ProcessException("Layer not found");
+        }
+
+        FeatureTypeInfo featureTypeInfo = (FeatureTypeInfo) layerInfo.getResource();
+        SimpleFeatureSource featureSource;
+        try {
+            featureSource = (SimpleFeatureSource) featureTypeInfo.getFeatureSource(null, null);
+        } catch (IOException e) {
+            throw new ProcessException("Error getting feature source", e);
+        }
+
+        TimeWindows timeWindows;
+        if (windows != null && !windows.trim().isEmpty()) {
+            timeWindows = parseWindows(windows);
+        } else if (startTime != null && endTime != null && interval != null) {
+            timeWindows = stepWindows(startTime, endTime, interval);
+        } else {
+            throw new ProcessException("Either windows or startTime, endTime and interval must be given");
+        }
+
+        // Query the union of the windows once, with one between filter per run of overlapping or
+        // touching windows so the gaps between disjoint windows are never read. Interval windows are
+        // contiguous and make a single span. The between filter is inclusive, end exclusive windows
+        // drop measurements on their end when the features are bucketed
+        FilterFactory filterFactory = CommonFactoryFinder.getFilterFactory();
+        Expression timeAttr = filterFactory.property("utc_time");
+        List<Filter> spanFilters = new ArrayList<>();
+        for (long[] span : timeWindows.getSpans()) {
+            spanFilters.add(filterFactory.between(timeAttr,
+                    filterFactory.literal(new Date(span[0])),
+                    filterFactory.literal(new Date(span[1]))));
+        }
+        Filter timeFilter = spanFilters.size() == 1 ? spanFilters.get(0) : filterFactory.or(spanFilters);
+
+        SimpleFeatureCollection features;
+        try {
+            features = featureSource.getFeatures(timeFilter);
+        } catch (IOException e) {
+            throw new ProcessException("Error getting features", e);
+        }
+        if (monitor != null) monitor.started();
+        ProgressTracker progress = new ProgressTracker(monitor, 0, 0, 0);
+
+        GridCalculator gridCalculator;
+        try {
+            gridCalculator = new GridCalculator(5000);
+        } catch (FactoryException e) {
+            throw new ProcessException("Error decoding source or target CRS", e);
+        } catch (NoninvertibleTransformException e) {
+            throw new ProcessException("Error creating inverse crs transformer", e);
+        }
+
+        // Progress is reported without a total rather than issuing a count query
+        List<GridCellSeries> grid = gridCalculator.aggregateSeries(features, timeWindows,
+                progress.stage(0, 90, 0), recorder);
+
+        List<SimpleFeature> results = new ArrayList<>();
+        SimpleFeatureType resultType;
+        try {
+            resultType = gridCalculator.getSeriesFeatureType(crs, timeWindows.size());
+        } catch (FactoryException e) {
+            throw new ProcessException("Error decoding CRS value");
+        }
+
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(resultType);
+        int fid = 0;
+
+        ProgressTracker buildProgress = progress.stage(90, 100, grid.size());
+        try (ExecutionRecorder.Stage ignored = recorder.stage("build")) {
+            for (GridCellSeries cell : grid) {
+                buildProgress.step(fid);
+                builder.add(cell.getPolygon());
+                for (int i = 0; i < timeWindows.size(); i++) {
+                    builder.add(cell.average(i));
+                }
+                for (int i = 1; i < timeWindows.size(); i++) {
+                    Double previous = cell.average(i - 1);
+                    Double current = cell.average(i);
+                    builder.add(previous == null || current == null ? null : current - previous);
+                }
+                results.add(builder.buildFeature(String.valueOf(fid++)));
+            }
+        }
+        recorder.count("windows", timeWindows.size());
+        recorder.count("output_features", results.size());
+
+        buildProgress.done();
+        if (monitor != null) monitor.complete();
+        return new ListFeatureCollection(resultType, results);
+    }
+
+    private TimeWindows parseWindows(String windows) {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        String[] pairs = windows.split(",");
+        if (pairs.length == 0) {
+            throw new ProcessException("At least one date range must be given");
+        }
+        if (pairs.length > MAX_WINDOWS) {
+            throw new ProcessException("Too many date ranges, at most " + MAX_WINDOWS + " are supported");
+        }
+
+        long[] starts = new long[pairs.length];
+        long[] ends = new long[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            String[] pair = pairs[i].trim().split("/");
+            if (pair.length != 2) {
+                throw new ProcessException("Date range " + (i + 1) + " must be a start/end pair");
+            }
+            Date start, end;
+            try {
+                start = sdf.parse(pair[0].trim());
+                end = sdf.parse(pair[1].trim());
+            } catch (Exception e) {
+                throw new ProcessException("Error parsing date", e);
+            }
+            if (start.after(end)) {
+                throw new ProcessException("Start date is after end date for date range " + (i + 1));
+            }
+            if (start.compareTo(end) == 0) {
+                throw new ProcessException("Start date is equal to end date for date range " + (i + 1));
+            }
+            starts[i] = start.getTime();
+            ends[i] = end.getTime();
+        }
+        return new TimeWindows(starts, ends);
+    }
+
+    /**
+     * Splits startTime to endTime into consecutive windows of the given interval, the last window
+     * ending at endTime. Windows are end exclusive so an instant on a boundary falls in one window.
+     */
+    private TimeWindows stepWindows(String startTime, String endTime, String interval) {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        Date startDate, endDate;
+        try {
+            startDate = sdf.parse(startTime);
+            endDate = sdf.parse(endTime);
+        } catch (Exception e) {
+            throw new ProcessException("Error parsing date", e);
+        }
+        if (startDate.after(endDate)) {
+            throw new ProcessException("Start is after the end date");
+        }
+        if (startDate.compareTo(endDate) == 0) {
+            throw new ProcessException("Start date is equal to end date for input date range");
+        }
+
+        Period period = null;
+        Duration duration = null;
+        try {
+            if (interval.toUpperCase().contains("T")) {
+                duration = Duration.parse(interval);
+            } else {
+                period = Period.parse(interval);
+            }
+        } catch (DateTimeParseException e) {
+            throw new ProcessException("Error parsing interval", e);
+        }
+        if ((period != null && (period.isNegative() || period.isZero()))
+                || (duration != null && (duration.isNegative() || duration.isZero()))) {
+            throw new ProcessException("Interval must be positive");
+        }
+
+        // Each boundary is stepped from the start rather than from the previous boundary, so a
+        // series starting on the 31st does not drift to the 28th after February
+        List<long[]> steps = new ArrayList<>();
+        Calendar calendar = Calendar.getInstance();
+        long end = endDate.getTime();
+        long windowStart = startDate.getTime();
+        while (windowStart < end) {
+            if (steps.size() == MAX_WINDOWS) {
+                throw new ProcessException("Too many date ranges, at most " + MAX_WINDOWS + " are supported");
+            }
+            int k = steps.size() + 1;
+            long windowEnd;
+            if (period != null) {
+                calendar.setTime(startDate);
+                calendar.add(Calendar.YEAR, k * period.getYears());
+                calendar.add(Calendar.MONTH, k * period.getMonths());
+                calendar.add(Calendar.DAY_OF_MONTH, k * period.getDays());
+                windowEnd = calendar.getTimeInMillis();
+            } else {
+                windowEnd = startDate.getTime() + k * duration.toMillis();
+            }
+            steps.add(new long[]{windowStart, Math.min(windowEnd, end)});
+            windowStart = windowEnd;
+        }
+
+        long[] starts = new long[steps.size()];
+        long[] ends = new long[steps.size()];
+        for (int i = 0; i < steps.size(); i++) {
+            starts[i] = steps.get(i)[0];
+            ends[i] = steps.get(i)[1];
+        }
+        return new TimeWindows(starts, ends, true);
+    }
+}
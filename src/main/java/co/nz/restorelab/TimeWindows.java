@@ -0,0 +1,107 @@
+package co.nz.restorelab;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A set of time windows that can be searched for every window containing a given instant.
+ * Windows always include their start, and include their end unless they are end exclusive, so
+ * consecutive end exclusive windows never share an instant. Windows keep the order they were
+ * given in.
+ */
+class TimeWindows {
+    private final long[] starts;
+    private final long[] ends;
+    private final boolean endExclusive;
+    // Window indices sorted by start, and the latest end seen up to each position in that order
+    private final int[] byStart;
+    private final long[] maxEnd;
+
+    TimeWindows(long[] starts, long[] ends) {
+        this(starts, ends, false);
+    }
+
+    /**
+     * @param endExclusive whether windows cover {@code [start, end)} rather than {@code [start, end]}
+     */
+    TimeWindows(long[] starts, long[] ends, boolean endExclusive) {
+        if (starts.length != ends.length) {
+            throw new IllegalArgumentException("Window starts and ends differ in length");
+        }
+        this.starts = starts.clone();
+        this.ends = ends.clone();
+        this.endExclusive = endExclusive;
+
+        Integer[] order = new Integer[starts.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong(i -> this.starts[i]));
+
+        byStart = new int[order.length];
+        maxEnd = new long[order.length];
+        long latest = Long.MIN_VALUE;
+        for (int i = 0; i < order.length; i++) {
+            byStart[i] = order[i];
+            latest = Math.max(latest, this.ends[order[i]]);
+            maxEnd[i] = latest;
+        }
+    }
+
+    int size() {
+        return starts.length;
+    }
+
+    long getStart(int window) {
+        return starts[window];
+    }
+
+    long getEnd(int window) {
+        return ends[window];
+    }
+
+    /**
+     * Start and end of each run of overlapping or touching windows, in order of start. Together the
+     * spans cover exactly the union of the windows.
+     */
+    List<long[]> getSpans() {
+        List<long[]> spans = new ArrayList<>();
+        long[] current = null;
+        for (int window : byStart) {
+            if (current != null && starts[window] <= current[1]) {
+                current[1] = Math.max(current[1], ends[window]);
+            } else {
+                current = new long[]{starts[window], ends[window]};
+                spans.add(current);
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * Writes the index of every window containing {@code time} into {@code matches} and returns
+     * how many were found. {@code matches} must have room for {@link #size()} entries.
+     */
+    int find(long time, int[] matches) {
+        // Last window starting at or before time
+        int lo = 0, hi = byStart.length - 1, last = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[byStart[mid]] <= time) {
+                last = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        int count = 0;
+        for (int i = last; i >= 0 && maxEnd[i] >= time; i--) {
+            long end = ends[byStart[i]];
+            if (end > time || (end == time && !endExclusive)) {
+                matches[count++] = byStart[i];
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,43 @@
+package co.nz.restorelab;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FloodMaskImageTest {
+
+    @Test
+    public void testTilesAreComputedFromWindows() {
+        BitSet near = new BitSet();
+        near.set(0);           // (0, 0)
+        near.set(3 * 4 + 2);   // (2, 3)
+        BitSet far = new BitSet();
+        far.set(1);            // (1, 0)
+
+        FloodMaskImage image = new FloodMaskImage(Arrays.asList(
+                new InundationBathtub.FloodWindow(100, 200, 4, 4, near),
+                new InundationBathtub.FloodWindow(100 + 5000, 200 + 3000, 2, 2, far)
+        ), 100, 200, 5002, 3002);
+
+        Raster nearData = image.getData(new Rectangle(0, 0, 4, 4));
+        assertEquals(1, nearData.getSample(0, 0, 0));
+        assertEquals(1, nearData.getSample(2, 3, 0));
+        assertEquals(0, nearData.getSample(3, 3, 0));
+
+        Raster farData = image.getData(new Rectangle(5000, 3000, 2, 2));
+        assertEquals(0, farData.getSample(5000, 3000, 0));
+        assertEquals(1, farData.getSample(5001, 3000, 0));
+
+        Raster gap = image.getData(new Rectangle(2500, 1500, 8, 8));
+        for (int y = 1500; y < 1508; y++) {
+            for (int x = 2500; x < 2508; x++) {
+                assertEquals(0, gap.getSample(x, y, 0));
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package co.nz.restorelab;
+
+import org.geotools.api.metadata.spatial.PixelOrientation;
+import org.geotools.api.referencing.operation.MathTransform2D;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.referencing.operation.transform.IdentityTransform;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class InundationBathtubTest {
+
+    GridCoverage2D dem;
+    ProgressTracker progress;
+    ExecutionRecorder recorder;
+
+    @BeforeEach
+    public void init() {
+        // Flat DEM of 0.01 degree pixels from 170E 41S, with a 3x3 pixel mound at 170.20E 41.20S
+        float[][] elevation = new float[100][100];
+        for (int row = 20; row < 23; row++) {
+            for (int col = 20; col < 23; col++) {
+                elevation[row][col] = 5;
+            }
+        }
+        ReferencedEnvelope envelope = new ReferencedEnvelope(170, 171, -42, -41, DefaultGeographicCRS.WGS84);
+        dem = new GridCoverageFactory().create("dem", elevation, envelope);
+        progress = new ProgressTracker(null, 0, 100, 0);
+        recorder = new ExecutionRecorder(null);
+    }
+
+    @Test
+    public void testSeparateClustersAreMosaicked() throws Exception {
+        SeedBuffer seeds = new SeedBuffer(IdentityTransform.create(2));
+        seeds.add(170.155, -41.155);
+        seeds.add(170.855, -41.855);
+        seeds.flush();
+
+        List<InundationBathtub.FloodWindow> windows = new ArrayList<>();
+        for (SeedBuffer cluster : seeds.cluster(0.2, InundationBathtub.AOI_BUFFER)) {
+            windows.add(InundationBathtub.fill(dem, dem.getCoordinateReferenceSystem2D(), cluster, progress, recorder));
+        }
+        assertEquals(2, windows.size());
+
+        GridCoverage2D result = InundationBathtub.mosaic(dem, windows, progress, recorder);
+
+        // The output covers the windows in the DEM's pixel grid
+        int minCol = Integer.MAX_VALUE, minRow = Integer.MAX_VALUE;
+        int maxCol = Integer.MIN_VALUE, maxRow = Integer.MIN_VALUE;
+        for (InundationBathtub.FloodWindow window : windows) {
+            minCol = Math.min(minCol, window.originX);
+            minRow = Math.min(minRow, window.originY);
+            maxCol = Math.max(maxCol, window.originX + window.width);
+            maxRow = Math.max(maxRow, window.originY + window.height);
+        }
+        MathTransform2D gridToCRS = dem.getGridGeometry().getGridToCRS2D(PixelOrientation.UPPER_LEFT);
+        Point2D upperLeft = gridToCRS.transform(new Point2D.Double(minCol, minRow), null);
+        Point2D lowerRight = gridToCRS.transform(new Point2D.Double(maxCol, maxRow), null);
+        ReferencedEnvelope envelope = ReferencedEnvelope.reference(result.getEnvelope2D());
+        assertEquals(upperLeft.getX(), envelope.getMinX(), 1e-9);
+        assertEquals(upperLeft.getY(), envelope.getMaxY(), 1e-9);
+        assertEquals(lowerRight.getX(), envelope.getMaxX(), 1e-9);
+        assertEquals(lowerRight.getY(), envelope.getMinY(), 1e-9);
+
+        assertEquals(1, sample(result, 170.155, -41.155));
+        assertEquals(1, sample(result, 170.855, -41.855));
+        assertEquals(1, sample(result, 170.185, -41.215));
+        // The mound is higher than the seeds, and the gap between windows is never flooded
+        assertEquals(0, sample(result, 170.215, -41.215));
+        assertEquals(0, sample(result, 170.5, -41.5));
+    }
+
+    @Test
+    public void testClusterOutsideDemIsSkipped() throws Exception {
+        SeedBuffer seeds = new SeedBuffer(IdentityTransform.create(2));
+        seeds.add(170.155, -41.155);
+        seeds.add(176.5, -44.0);
+        seeds.flush();
+
+        List<SeedBuffer> clusters = seeds.cluster(0.2, InundationBathtub.AOI_BUFFER);
+        assertEquals(2, clusters.size());
+
+        List<InundationBathtub.FloodWindow> windows = new ArrayList<>();
+        for (SeedBuffer cluster : clusters) {
+            InundationBathtub.FloodWindow window = InundationBathtub.fill(dem, dem.getCoordinateReferenceSystem2D(), cluster, progress, recorder);
+            if (cluster.getMinX() > 171) {
+                assertNull(window);
+            } else {
+                windows.add(window);
+            }
+        }
+        assertEquals(1L, (long) recorder.getCounts().get("seeds_outside"));
+
+        GridCoverage2D result = InundationBathtub.mosaic(dem, windows, progress, recorder);
+        assertEquals(1, sample(result, 170.155, -41.155));
+    }
+
+    private static int sample(GridCoverage2D coverage, double x, double y) {
+        return coverage.evaluate(new Point2D.Double(x, y), new int[1])[0];
+    }
+}
@@ -0,0 +1,46 @@
+package co.nz.restorelab;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProcessMetricsTest {
+
+    @Test
+    public void testRecorderMergesIntoProcessMetrics() {
+        ProcessMetrics metrics = new ProcessMetrics("test");
+
+        try (ExecutionRecorder recorder = new ExecutionRecorder(metrics)) {
+            recorder.record("read", 2_000_000);
+            recorder.record("read", 1_000_000);
+            recorder.count("features", 10);
+            recorder.count("features", 5);
+            recorder.complete();
+        }
+        try (ExecutionRecorder recorder = new ExecutionRecorder(metrics)) {
+            recorder.record("read", 3_000_000);
+        }
+
+        assertEquals(2, metrics.getExecutions());
+        assertEquals(1, metrics.getFailures());
+        assertEquals(2, metrics.getStageCount("read"));
+        assertEquals(3.0, metrics.getStageMeanMillis("read"), 0.001);
+        assertEquals(3.0, metrics.getStageMaxMillis("read"), 0.001);
+        assertEquals(2, metrics.getStageCount(ProcessMetrics.TOTAL));
+        assertEquals(15, metrics.getCounter("features"));
+    }
+
+    @Test
+    public void testPercentilesUseBucketUpperBounds() {
+        ProcessMetrics.StageTimer timer = new ProcessMetrics.StageTimer();
+        for (int i = 0; i < 99; i++) {
+            timer.record(1_500_000); // 1.5ms falls in the bucket below 2.048ms
+        }
+        timer.record(100_000_000);
+
+        assertEquals(2.048, timer.percentileMillis(0.5), 0.001);
+        assertEquals(2.048, timer.percentileMillis(0.99), 0.001);
+        assertTrue(timer.percentileMillis(1.0) >= 100);
+    }
+}
@@ -0,0 +1,48 @@
+package co.nz.restorelab;
+
+import org.geotools.api.util.ProgressListener;
+import org.geotools.process.ProcessException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProgressTrackerTest {
+
+    @Test
+    public void testUnknownTotalNeverReachesEnd() {
+        ProgressListener monitor = mock(ProgressListener.class);
+        ProgressTracker tracker = new ProgressTracker(monitor, 0, 50, 0);
+
+        tracker.report(ProgressTracker.UNKNOWN_TOTAL_SCALE);
+
+        verify(monitor).progress(25f);
+    }
+
+    @Test
+    public void testPartsSplitTheStage() {
+        ProgressListener monitor = mock(ProgressListener.class);
+        ProgressTracker tracker = new ProgressTracker(monitor, 10, 90, 0).part(1, 4).withTotal(100);
+
+        tracker.report(50);
+
+        verify(monitor).progress(40f);
+    }
+
+    @Test
+    public void testDetachedTrackerSeesCancellationWithoutListener() {
+        ProgressListener monitor = mock(ProgressListener.class);
+        ProgressTracker tracker = new ProgressTracker(monitor, 0, 100, 10);
+        ProgressTracker worker = tracker.detached();
+
+        worker.report(5);
+        verify(monitor, never()).progress(50f);
+
+        when(monitor.isCanceled()).thenReturn(true);
+        assertThrows(ProcessException.class, tracker::checkCancelled);
+        assertThrows(ProcessException.class, () -> worker.report(6));
+    }
+}
@@ -0,0 +1,158 @@
+package co.nz.restorelab;
+
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.api.referencing.operation.TransformException;
+import org.geotools.referencing.operation.transform.AffineTransform2D;
+import org.geotools.referencing.operation.transform.IdentityTransform;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class SeedBufferTest {
+
+    SeedBuffer seeds;
+    // One pixel per world unit, grid origin at world (0, 10) with rows increasing southwards
+    AffineTransform2D crsToGrid = new AffineTransform2D(1, 0, 0, -1, 0, 10);
+
+    @BeforeEach
+    public void init() {
+        seeds = new SeedBuffer(IdentityTransform.create(2));
+    }
+
+    @Test
+    public void testBoundsTrackAddedPoints() throws Exception {
+        seeds.add(1.5, 2.5);
+        seeds.add(-3.0, 7.0);
+        seeds.flush();
+
+        assertEquals(2, seeds.size());
+        assertEquals(-3.0, seeds.getMinX());
+        assertEquals(1.5, seeds.getMaxX());
+        assertEquals(2.5, seeds.getMinY());
+        assertEquals(7.0, seeds.getMaxY());
+    }
+
+    @Test
+    public void testDuplicatePixelsAreSeededOnce() throws Exception {
+        seeds.add(1.1, 8.9);
+        seeds.add(1.9, 8.1);
+        seeds.add(3.5, 5.5);
+        seeds.flush();
+
+        int[] pixels = seeds.toPixels(crsToGrid, 0, 0, 5, 5);
+
+        assertArrayEquals(new int[]{1 * 5 + 1, 4 * 5 + 3}, pixels);
+        assertEquals(1, seeds.getDuplicates());
+    }
+
+    @Test
+    public void testPointsOutsideWindowAreSkipped() throws Exception {
+        seeds.add(2.5, 7.5);
+        seeds.add(20.0, 7.5);
+        seeds.add(Double.NaN, 7.5);
+        seeds.flush();
+
+        int[] pixels = seeds.toPixels(crsToGrid, 1, 1, 3, 3);
+
+        assertArrayEquals(new int[]{1 * 3 + 1}, pixels);
+        assertEquals(1, seeds.getOutside());
+        assertEquals(1, seeds.getInvalid());
+    }
+
+    @Test
+    public void testBatchesLargerThanBufferAreKept() throws Exception {
+        for (int i = 0; i < 5000; i++) {
+            seeds.add(i % 10 + 0.5, 9.5 - (i / 10) % 10);
+        }
+        seeds.flush();
+
+        assertEquals(5000, seeds.size());
+        int[] pixels = seeds.toPixels(crsToGrid, 0, 0, 10, 10);
+        assertEquals(100, pixels.length);
+        assertEquals(4900, seeds.getDuplicates());
+        assertTrue(seeds.toString().contains("read=5000"));
+    }
+
+    @Test
+    public void testPointsFailingToTransformAreDropped() throws Exception {
+        // Like a projection: failed points are set to NaN and the whole batch then throws
+        MathTransform transform = mock(MathTransform.class);
+        doAnswer(invocation -> {
+            double[] src = invocation.getArgument(0);
+            int srcOff = invocation.getArgument(1);
+            double[] dst = invocation.getArgument(2);
+            int dstOff = invocation.getArgument(3);
+            int numPts = invocation.getArgument(4);
+            boolean failed = false;
+            for (int i = 0; i < numPts * 2; i += 2) {
+                boolean bad = src[srcOff + i] < 0;
+                dst[dstOff + i] = bad ? Double.NaN : src[srcOff + i];
+                dst[dstOff + i + 1] = bad ? Double.NaN : src[srcOff + i + 1];
+                failed |= bad;
+            }
+            if (failed) throw new TransformException("Point outside projection domain");
+            return null;
+        }).when(transform).transform(any(double[].class), anyInt(), any(double[].class), anyInt(), anyInt());
+
+        seeds = new SeedBuffer(transform);
+        seeds.add(1.5, 2.5);
+        seeds.add(-1.0, 2.5);
+        seeds.add(3.5, 4.5);
+        seeds.flush();
+
+        assertEquals(2, seeds.size());
+        assertEquals(1, seeds.getInvalid());
+        assertEquals(1.5, seeds.getMinX());
+        assertEquals(3.5, seeds.getMaxX());
+    }
+
+    @Test
+    public void testDistantPointsAreClusteredSeparately() throws Exception {
+        seeds.add(172.0, -41.0);
+        seeds.add(172.05, -41.02);
+        seeds.add(178.0, -37.5);
+        seeds.flush();
+
+        List<SeedBuffer> clusters = seeds.cluster(0.5, 0.1);
+
+        assertEquals(2, clusters.size());
+        assertEquals(2, clusters.get(0).size());
+        assertEquals(172.05, clusters.get(0).getMaxX());
+        assertEquals(1, clusters.get(1).size());
+        assertEquals(178.0, clusters.get(1).getMinX());
+    }
+
+    @Test
+    public void testOverlappingBufferedClustersAreMerged() throws Exception {
+        // Bins are not adjacent, but the buffered windows would overlap
+        seeds.add(0.1, 0.1);
+        seeds.add(1.05, 0.1);
+        seeds.flush();
+
+        assertEquals(2, seeds.cluster(0.5, 0.1).size());
+        assertEquals(1, seeds.cluster(0.5, 0.5).size());
+    }
+
+    @Test
+    public void testClustersGrownByAMergeAreMergedAgain() throws Exception {
+        // An L shaped group along y = 0.5 and up x = 10
+        for (int i = 0; i <= 40; i++) seeds.add(i * 0.25, 0.5);
+        for (int i = 1; i <= 10; i++) seeds.add(10, 0.5 + i * 0.25);
+        // A lone point whose window only overlaps the L once the L has merged with the upright below
+        seeds.add(0.5, 5.5);
+        // An upright overlapping the L's window
+        for (int i = 0; i <= 20; i++) seeds.add(5.5, 2.0 + i * 0.25);
+        seeds.flush();
+
+        assertEquals(1, seeds.cluster(0.5, 0.1).size());
+    }
+}
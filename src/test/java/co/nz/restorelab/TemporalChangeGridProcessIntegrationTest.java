@@ -2,6 +2,7 @@ package co.nz.restorelab;
 
 import co.nz.restorelab.utils.MockSoilMoisture;
 import org.geotools.api.feature.Feature;
+import org.geotools.api.util.ProgressListener;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.process.ProcessException;
@@ -10,6 +11,9 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class TemporalChangeGridProcessIntegrationTest {
 
@@ -28,7 +32,7 @@ public class TemporalChangeGridProcessIntegrationTest {
         String start2 = "2025-02-01T00:00:00";
         String end2 = "2025-02-05T00:00:00";
 
-        SimpleFeatureCollection result = process.execute(start1, end1, start2, end2, "EPSG:3857");
+        SimpleFeatureCollection result = process.execute(start1, end1, start2, end2, "EPSG:3857", null);
 
         assertEquals(10, result.size());
 
@@ -46,7 +50,7 @@ public class TemporalChangeGridProcessIntegrationTest {
         String end1 = "2025-01-05T00:00:00";
         String start2 = "2025-02-01T00:00:00";
         String end2 = "2025-02-05T00:00:00";
-        ProcessException exception = assertThrows(ProcessException.class,() -> process.execute(start1, end1, start2, end2, "EPSG:3857"));
+        ProcessException exception = assertThrows(ProcessException.class,() -> process.execute(start1, end1, start2, end2, "EPSG:3857", null));
 
         assertEquals("Error parsing date", exception.getMessage());
     }
@@ -57,8 +61,8 @@ public class TemporalChangeGridProcessIntegrationTest {
         String start2 = "2025-02-01T00:00:00";
         String end2 = "2025-02-05T00:00:00";
 
-        ProcessException exception = assertThrows(ProcessException.class, () -> process.execute(end1,start1,start2,end2,"EPSG:3857"));
-        ProcessException exception1 = assertThrows(ProcessException.class, () -> process.execute(start1,end1,end2,start2,"EPSG:3857"));
+        ProcessException exception = assertThrows(ProcessException.class, () -> process.execute(end1,start1,start2,end2,"EPSG:3857", null));
+        ProcessException exception1 = assertThrows(ProcessException.class, () -> process.execute(start1,end1,end2,start2,"EPSG:3857", null));
 
         assertEquals("Start date is after end date for date range 1", exception.getMessage());
         assertEquals("Start date is after end date for date range 2", exception1.getMessage());
@@ -70,10 +74,34 @@ public class TemporalChangeGridProcessIntegrationTest {
         String start2 = "2025-02-01T00:00:00";
         String end2 = "2025-02-05T00:00:00";
 
-        ProcessException exception = assertThrows(ProcessException.class, () -> process.execute(start1,start1,start2,end2,"EPSG:3857"));
-        ProcessException exception1 = assertThrows(ProcessException.class, () -> process.execute(start1,end1,start2,start2,"EPSG:3857"));
+        ProcessException exception = assertThrows(ProcessException.class, () -> process.execute(start1,start1,start2,end2,"EPSG:3857", null));
+        ProcessException exception1 = assertThrows(ProcessException.class, () -> process.execute(start1,end1,start2,start2,"EPSG:3857", null));
 
         assertEquals("Start date is equal to end date for date range 1", exception.getMessage());
         assertEquals("Start date is equal to end date for date range 2", exception1.getMessage());
     }
+
+    @Test public void testReportsProgress() {
+        ProgressListener monitor = mock(ProgressListener.class);
+
+        process.execute("2025-01-01T00:00:00", "2025-01-05T00:00:00", "2025-02-01T00:00:00", "2025-02-05T00:00:00", "EPSG:3857", monitor);
+
+        verify(monitor).started();
+        verify(monitor).progress(100f);
+        verify(monitor).complete();
+    }
+
+    @Test public void testCancelled() {
+        String start1 = "2025-01-01T00:00:00";
+        String end1 = "2025-01-05T00:00:00";
+        String start2 = "2025-02-01T00:00:00";
+        String end2 = "2025-02-05T00:00:00";
+        ProgressListener monitor = mock(ProgressListener.class);
+        when(monitor.isCanceled()).thenReturn(true);
+
+        ProcessException exception = assertThrows(ProcessException.class, () -> process.execute(start1, end1, start2, end2, "EPSG:3857", monitor));
+
+        assertEquals("Process cancelled", exception.getMessage());
+        verify(monitor).exceptionOccurred(exception);
+    }
 }
@@ -0,0 +1,184 @@
+package co.nz.restorelab;
+
+import co.nz.restorelab.utils.MockSoilMoisture;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.filter.Filter;
+import org.geotools.api.filter.Or;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.ProcessException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+
+public class TemporalGridChangeSeriesIntegrationTest {
+
+    TemporalGridChangeSeries process;
+
+    @BeforeEach
+    public void init() throws Exception {
+        Date[] times = {
+                new GregorianCalendar(2025, Calendar.JANUARY, 2).getTime(),
+                new GregorianCalendar(2025, Calendar.FEBRUARY, 2).getTime(),
+                new GregorianCalendar(2025, Calendar.MARCH, 2).getTime(),
+        };
+        MockSoilMoisture mock = new MockSoilMoisture(10, times, new double[]{50, 60, 75});
+        process = new TemporalGridChangeSeries(mock.mockCatalog);
+    }
+
+    @Test
+    public void testMonthlyInterval() {
+        SimpleFeatureCollection result = process.execute(null, "2025-01-01T00:00:00", "2025-04-01T00:00:00", "P1M", "EPSG:3857", null);
+
+        assertEquals(10, result.size());
+        try (SimpleFeatureIterator iterator = result.features()) {
+            while (iterator.hasNext()) {
+                SimpleFeature feature = iterator.next();
+                assertEquals(50.0, (double) feature.getAttribute("mean_0"), 0.001);
+                assertEquals(60.0, (double) feature.getAttribute("mean_1"), 0.001);
+                assertEquals(75.0, (double) feature.getAttribute("mean_2"), 0.001);
+                assertEquals(10.0, (double) feature.getAttribute("change_1"), 0.001);
+                assertEquals(15.0, (double) feature.getAttribute("change_2"), 0.001);
+            }
+        }
+    }
+
+    @Test
+    public void testMonthlyIntervalFromMonthEnd() throws Exception {
+        // Boundaries are Feb 28, Mar 31 and Apr 30, not Feb 28, Mar 28 and Apr 28
+        Date[] times = {
+                new GregorianCalendar(2025, Calendar.FEBRUARY, 1).getTime(),
+                new GregorianCalendar(2025, Calendar.MARCH, 30).getTime(),
+                new GregorianCalendar(2025, Calendar.APRIL, 29).getTime(),
+        };
+        MockSoilMoisture mock = new MockSoilMoisture(10, times, new double[]{50, 60, 75});
+        process = new TemporalGridChangeSeries(mock.mockCatalog);
+
+        SimpleFeatureCollection result = process.execute(null, "2025-01-31T00:00:00", "2025-05-01T00:00:00", "P1M", "EPSG:3857", null);
+
+        try (SimpleFeatureIterator iterator = result.features()) {
+            SimpleFeature feature = iterator.next();
+            assertEquals(50.0, (double) feature.getAttribute("mean_0"), 0.001);
+            assertEquals(60.0, (double) feature.getAttribute("mean_1"), 0.001);
+            assertEquals(75.0, (double) feature.getAttribute("mean_2"), 0.001);
+            assertEquals(null, feature.getAttribute("mean_3"));
+        }
+    }
+
+    @Test
+    public void testIntervalBoundaryInOneWindow() throws Exception {
+        Date[] times = {
+                new GregorianCalendar(2025, Calendar.JANUARY, 2).getTime(),
+                new GregorianCalendar(2025, Calendar.FEBRUARY, 1).getTime(),
+        };
+        MockSoilMoisture mock = new MockSoilMoisture(10, times, new double[]{50, 60});
+        process = new TemporalGridChangeSeries(mock.mockCatalog);
+
+        SimpleFeatureCollection result = process.execute(null, "2025-01-01T00:00:00", "2025-03-01T00:00:00", "P1M", "EPSG:3857", null);
+
+        try (SimpleFeatureIterator iterator = result.features()) {
+            SimpleFeature feature = iterator.next();
+            // The measurement at 2025-02-01T00:00:00 only counts in the February window
+            assertEquals(50.0, (double) feature.getAttribute("mean_0"), 0.001);
+            assertEquals(60.0, (double) feature.getAttribute("mean_1"), 0.001);
+            assertEquals(10.0, (double) feature.getAttribute("change_1"), 0.001);
+        }
+    }
+
+    @Test
+    public void testOverlappingWindows() {
+        String windows = "2025-01-01T00:00:00/2025-02-15T00:00:00, 2025-02-01T00:00:00/2025-03-01T00:00:00";
+
+        SimpleFeatureCollection result = process.execute(windows, null, null, null, "EPSG:3857", null);
+
+        assertEquals(10, result.size());
+        try (SimpleFeatureIterator iterator = result.features()) {
+            while (iterator.hasNext()) {
+                SimpleFeature feature = iterator.next();
+                // The February measurement falls in both windows
+                assertEquals(55.0, (double) feature.getAttribute("mean_0"), 0.001);
+                assertEquals(60.0, (double) feature.getAttribute("mean_1"), 0.001);
+                assertEquals(5.0, (double) feature.getAttribute("change_1"), 0.001);
+            }
+        }
+    }
+
+    @Test
+    public void testDisjointWindowsQueryOnlyTheirUnion() throws Exception {
+        Date[] times = {
+                new GregorianCalendar(2024, Calendar.JANUARY, 2).getTime(),
+                new GregorianCalendar(2025, Calendar.JANUARY, 20).getTime(),
+        };
+        MockSoilMoisture mock = new MockSoilMoisture(10, times, new double[]{50, 60});
+        process = new TemporalGridChangeSeries(mock.mockCatalog);
+        // The overlapping 2025 windows share a span, the year between the spans is not queried
+        String windows = "2024-01-01T00:00:00/2024-02-01T00:00:00,2025-01-01T00:00:00/2025-02-01T00:00:00,"
+                + "2025-01-15T00:00:00/2025-02-01T00:00:00";
+
+        SimpleFeatureCollection result = process.execute(windows, null, null, null, "EPSG:3857", null);
+
+        ArgumentCaptor<Filter> filter = ArgumentCaptor.forClass(Filter.class);
+        verify(mock.mockFeatureSource).getFeatures(filter.capture());
+        assertTrue(filter.getValue() instanceof Or);
+        assertEquals(2, ((Or) filter.getValue()).getChildren().size());
+        try (SimpleFeatureIterator iterator = result.features()) {
+            SimpleFeature feature = iterator.next();
+            assertEquals(50.0, (double) feature.getAttribute("mean_0"), 0.001);
+            assertEquals(60.0, (double) feature.getAttribute("mean_1"), 0.001);
+            assertEquals(60.0, (double) feature.getAttribute("mean_2"), 0.001);
+        }
+    }
+
+    @Test
+    public void testEmptyWindowList() {
+        ProcessException exception = assertThrows(ProcessException.class, () -> process.execute(",", null, null, null, "EPSG:3857", null));
+
+        assertEquals("At least one date range must be given", exception.getMessage());
+    }
+
+    @Test
+    public void testEmptyWindowHasNoChange() {
+        String windows = "2025-01-01T00:00:00/2025-01-10T00:00:00,2025-01-10T00:00:00/2025-01-20T00:00:00";
+
+        SimpleFeatureCollection result = process.execute(windows, null, null, null, "EPSG:3857", null);
+
+        try (SimpleFeatureIterator iterator = result.features()) {
+            SimpleFeature feature = iterator.next();
+            assertEquals(50.0, (double) feature.getAttribute("mean_0"), 0.001);
+            assertEquals(null, feature.getAttribute("mean_1"));
+            assertEquals(null, feature.getAttribute("change_1"));
+        }
+    }
+
+    @Test
+    public void testMissingWindows() {
+        ProcessException exception = assertThrows(ProcessException.class, () -> process.execute(null, "2025-01-01T00:00:00", null, null, "EPSG:3857", null));
+
+        assertEquals("Either windows or startTime, endTime and interval must be given", exception.getMessage());
+    }
+
+    @Test
+    public void testEndBehindStartInWindow() {
+        String windows = "2025-01-01T00:00:00/2025-02-01T00:00:00,2025-03-01T00:00:00/2025-02-01T00:00:00";
+
+        ProcessException exception = assertThrows(ProcessException.class, () -> process.execute(windows, null, null, null, "EPSG:3857", null));
+
+        assertEquals("Start date is after end date for date range 2", exception.getMessage());
+    }
+
+    @Test
+    public void testInvalidInterval() {
+        ProcessException exception = assertThrows(ProcessException.class, () -> process.execute(null, "2025-01-01T00:00:00", "2025-04-01T00:00:00", "monthly", "EPSG:3857", null));
+
+        assertEquals("Error parsing interval", exception.getMessage());
+    }
+}
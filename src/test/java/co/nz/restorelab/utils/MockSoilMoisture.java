@@ -5,6 +5,7 @@ import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geotools.api.data.SimpleFeatureSource;
 import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
@@ -24,29 +25,19 @@ public class MockSoilMoisture {
     public Catalog mockCatalog;
     LayerInfo mockLayer;
     FeatureTypeInfo mockFeatureType;
-    SimpleFeatureSource mockFeatureSource;
+    public SimpleFeatureSource mockFeatureSource;
 
     SimpleFeatureTypeBuilder tb;
     GeometryFactory gf;
     public MockSoilMoisture(int featureCount) throws IOException {
-        tb = new SimpleFeatureTypeBuilder();
-        tb.setName("testing");
-        tb.add("geometry", Point.class);
-        tb.add("utc_time", Date.class);
-        tb.add("smc_mat", Double.class);
-        SimpleFeatureType featureType = tb.buildFeatureType();
-
-        gf = new GeometryFactory();
+        SimpleFeatureType featureType = buildFeatureType();
         DefaultFeatureCollection dateRange1 = new DefaultFeatureCollection();
         DefaultFeatureCollection dateRange2 = new DefaultFeatureCollection();
 
         SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType);
 
         for (int i = 0; i < featureCount; i++) {
-            Point p = gf.createPoint(new Coordinate(
-                    19500000 + (i * 10000), // Spread points ~10km apart
-                    -5000000 + (i * 10000)  // Spread points ~10km apart
-            ));
+            Point p = createPoint(i);
             // Date range 1 data
             double smcMat = 50d;
             featureBuilder.set("geometry", p);
@@ -61,6 +52,51 @@ public class MockSoilMoisture {
             featureBuilder.set("smc_mat", smcMat);
             dateRange2.add(featureBuilder.buildFeature("fid" + i));
         }
+        mockSource(dateRange1, dateRange2);
+    }
+
+    /**
+     * Serves featureCount points, each measured once at every time with the matching value.
+     */
+    public MockSoilMoisture(int featureCount, Date[] times, double[] values) throws IOException {
+        SimpleFeatureType featureType = buildFeatureType();
+        DefaultFeatureCollection measurements = new DefaultFeatureCollection();
+
+        SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType);
+
+        for (int i = 0; i < featureCount; i++) {
+            Point p = createPoint(i);
+            for (int t = 0; t < times.length; t++) {
+                featureBuilder.set("geometry", p);
+                featureBuilder.set("utc_time", times[t]);
+                featureBuilder.set("smc_mat", values[t]);
+                measurements.add(featureBuilder.buildFeature("fid" + i + "_" + t));
+            }
+        }
+        mockSource(measurements);
+    }
+
+    private SimpleFeatureType buildFeatureType() {
+        tb = new SimpleFeatureTypeBuilder();
+        tb.setName("testing");
+        tb.add("geometry", Point.class);
+        tb.add("utc_time", Date.class);
+        tb.add("smc_mat", Double.class);
+        gf = new GeometryFactory();
+        return tb.buildFeatureType();
+    }
+
+    private Point createPoint(int i) {
+        return gf.createPoint(new Coordinate(
+                19500000 + (i * 10000), // Spread points ~10km apart
+                -5000000 + (i * 10000)  // Spread points ~10km apart
+        ));
+    }
+
+    /**
+     * Wires the catalog to a feature source returning the collections in turn, one per query.
+     */
+    private void mockSource(SimpleFeatureCollection first, SimpleFeatureCollection... rest) throws IOException {
         mockCatalog = mock(Catalog.class);
         mockLayer = mock(LayerInfo.class);
         mockFeatureType = mock(FeatureTypeInfo.class);
@@ -69,6 +105,6 @@ public class MockSoilMoisture {
         when(mockCatalog.getLayerByName("restore-lab:smc_measurements")).thenReturn(mockLayer);
         when(mockLayer.getResource()).thenReturn(mockFeatureType);
         when((SimpleFeatureSource) mockFeatureType.getFeatureSource(null, null)).thenReturn(mockFeatureSource);
-        when(mockFeatureSource.getFeatures((Filter) any())).thenReturn(dateRange1, dateRange2);
+        when(mockFeatureSource.getFeatures((Filter) any())).thenReturn(first, rest);
     }
 }